@@ -3,27 +3,66 @@ package ru.mindils.jb2.app.config;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class HttpConfig {
 
+  /**
+   * Клиент hh.ru. По HTTP/2 параллельные запросы мультиплексируются в одно соединение
+   * (при отказе сервера клиент сам откатывается на HTTP/1.1), ответы обрабатываются в отдельном пуле
+   */
   @Bean
-  public HttpClient httpClient() {
+  public HttpClient httpClient(@Value("${jb2.hh.http-version:HTTP_2}") HttpClient.Version version,
+                               @Value("${jb2.hh.connect-timeout:PT5S}") Duration connectTimeout,
+                               @Qualifier("hhHttpExecutor") ExecutorService hhHttpExecutor) {
     return HttpClient
         .newBuilder()
-        .connectTimeout(Duration.ofSeconds(5))
+        .version(version)
+        .connectTimeout(connectTimeout)
+        .executor(hhHttpExecutor)
         .build();
   }
 
+  /**
+   * Пул клиента hh.ru для обработки ответов
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService hhHttpExecutor(@Value("${jb2.hh.client-threads:4}") int clientThreads) {
+    return daemonPool("hh-http-", clientThreads);
+  }
+
+  /**
+   * Пул для параллельной загрузки деталей вакансий с hh.ru.
+   * Частоту запросов ограничивает RequestRateLimiter, размер пула - число одновременных соединений
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService hhFetchExecutor(@Value("${jb2.hh.max-concurrent-requests:4}") int maxConcurrentRequests) {
+    return daemonPool("hh-fetch-", maxConcurrentRequests);
+  }
+
   @Bean
   public ObjectMapper objectMapper() {
     return new ObjectMapper()
         .registerModule(new JavaTimeModule())
         .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
   }
+
+  static ExecutorService daemonPool(String namePrefix, int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
 }
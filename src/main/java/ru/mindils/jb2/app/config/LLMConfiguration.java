@@ -4,6 +4,7 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,6 +15,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 public class LLMConfiguration {
@@ -27,24 +29,47 @@ public class LLMConfiguration {
   @Value("${spring.ai.openai.chat.options.timeout:60s}")
   private Duration timeout;
 
+  // LiteLLM по http:// не поддерживает h2c, поэтому HTTP/2 включается только явно (например, за TLS-прокси)
+  @Value("${jb2.llm.http-version:HTTP_1_1}")
+  private HttpClient.Version httpVersion;
+
+  @Value("${jb2.llm.connect-timeout:PT10S}")
+  private Duration connectTimeout;
+
+  @Value("${jb2.llm.client-threads:8}")
+  private int clientThreads;
+
   @Bean
-  public OpenAiApi openAiApi() {
+  public OpenAiApi openAiApi(@Qualifier("llmHttpExecutor") ExecutorService llmHttpExecutor) {
+    // Один клиент (и пул соединений) на блокирующий и реактивный вызовы
+    HttpClient httpClient = HttpClient.newBuilder()
+        .version(httpVersion)
+        .connectTimeout(connectTimeout)
+        .executor(llmHttpExecutor)
+        .build();
+
+    JdkClientHttpConnector connector = new JdkClientHttpConnector(httpClient);
+    connector.setReadTimeout(timeout);
+
+    JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+    requestFactory.setReadTimeout(timeout);
+
     return OpenAiApi.builder()
         .baseUrl(baseUrl)
         .apiKey(apiKey)
-        .webClientBuilder(WebClient.builder()
-            .clientConnector(new JdkClientHttpConnector(HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .connectTimeout(timeout)
-                .build())))
-        .restClientBuilder(RestClient.builder()
-            .requestFactory(new JdkClientHttpRequestFactory(HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_1_1)
-                .connectTimeout(timeout)
-                .build())))
+        .webClientBuilder(WebClient.builder().clientConnector(connector))
+        .restClientBuilder(RestClient.builder().requestFactory(requestFactory))
         .build();
   }
 
+  /**
+   * Пул HTTP-клиента LLM для обработки ответов
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService llmHttpExecutor() {
+    return HttpConfig.daemonPool("llm-http-", clientThreads);
+  }
+
   @Bean
   public OpenAiChatModel openAiChatModel(OpenAiApi api,
                                          @Value("${spring.ai.openai.chat.options.model:gpt-4}") String model,
@@ -0,0 +1,12 @@
+package ru.mindils.jb2.app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает фоновые задачи по расписанию (@Scheduled)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -20,6 +20,10 @@ public class GenericTaskQueueDto {
   private String status;
   private String errorMessage;
   private Integer priority;
+  private String lockedBy;
+  private OffsetDateTime leaseUntil;
+  private Integer attemptCount;
+  private OffsetDateTime nextAttemptAt;
   private OffsetDateTime createdDate;
   private OffsetDateTime lastModifiedDate;
 
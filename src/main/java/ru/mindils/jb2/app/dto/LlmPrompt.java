@@ -0,0 +1,27 @@
+package ru.mindils.jb2.app.dto;
+
+/**
+ * Запрос к LLM из двух сообщений: неизменная часть (инструкции, system) и переменная часть (данные, user).
+ * Инструкции идут первыми и совпадают между вызовами одного типа анализа,
+ * поэтому провайдер может закэшировать этот префикс
+ *
+ * @param system инструкции или null, если запрос состоит только из пользовательского сообщения
+ * @param user   данные запроса
+ */
+public record LlmPrompt(String system, String user) {
+
+  public static LlmPrompt ofUser(String user) {
+    return new LlmPrompt(null, user);
+  }
+
+  public boolean hasSystem() {
+    return system != null && !system.isEmpty();
+  }
+
+  /**
+   * Полный текст запроса для лога
+   */
+  public String fullText() {
+    return hasSystem() ? system + "\n" + user : user;
+  }
+}
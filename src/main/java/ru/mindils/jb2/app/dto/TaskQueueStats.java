@@ -13,14 +13,18 @@ public class TaskQueueStats {
   private Integer processingTasks = 0;
   private Integer completedTasks = 0;
   private Integer failedTasks = 0;
+  private Integer deadTasks = 0;
+
+  // Задачи в NEW, которые уже падали и ждут повторной попытки
+  private Integer retryingTasks = 0;
 
   public int getTotalTasks() {
-    return newTasks + processingTasks + completedTasks + failedTasks;
+    return newTasks + processingTasks + completedTasks + failedTasks + deadTasks;
   }
 
   @Override
   public String toString() {
-    return String.format("TaskQueueStats{total=%d, new=%d, processing=%d, completed=%d, failed=%d}",
-        getTotalTasks(), newTasks, processingTasks, completedTasks, failedTasks);
+    return String.format("TaskQueueStats{total=%d, new=%d, retrying=%d, processing=%d, completed=%d, failed=%d, dead=%d}",
+        getTotalTasks(), newTasks, retryingTasks, processingTasks, completedTasks, failedTasks, deadTasks);
   }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ru.mindils.jb2.app.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Часть пространства поиска вакансий (обычно окно дат публикации), результаты которой
+ * целиком укладываются в ограничение hh.ru на глубину выдачи одного запроса
+ */
+@Getter
+@Setter
+public class VacancySearchSlice {
+
+  private List<Map<String, String>> requestParams;
+  private int found;
+  // Первая страница выдачи уже загружена при планировании: ID ее вакансий и число страниц
+  private List<String> firstPageIds;
+  private int pages;
+
+  public VacancySearchSlice() {
+  }
+
+  public VacancySearchSlice(List<Map<String, String>> requestParams, VacancySearchResponseDto firstPage) {
+    this.requestParams = requestParams;
+    this.found = firstPage.getFound() != null ? firstPage.getFound() : 0;
+    this.firstPageIds = firstPage.getItems() != null
+        ? firstPage.getItems().stream().map(VacancyShortDto::getId).toList()
+        : List.of();
+    this.pages = firstPage.getPages() != null ? firstPage.getPages() : 0;
+  }
+}
@@ -0,0 +1,28 @@
+package ru.mindils.jb2.app.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Окно инкрементальной синхронизации вакансий: с какого момента публикации запрашивать вакансии
+ * и когда запуск начался (станет новой отметкой после успешного завершения)
+ */
+@Getter
+@Setter
+public class VacancySyncWindow {
+
+  private String filterCode;
+  private OffsetDateTime dateFrom;
+  private OffsetDateTime startedAt;
+
+  public VacancySyncWindow() {
+  }
+
+  public VacancySyncWindow(String filterCode, OffsetDateTime dateFrom, OffsetDateTime startedAt) {
+    this.filterCode = filterCode;
+    this.dateFrom = dateFrom;
+    this.startedAt = startedAt;
+  }
+}
@@ -45,6 +45,18 @@ public class GenericTaskQueue {
   @Column(name = "PRIORITY")
   private Integer priority;
 
+  @Column(name = "LOCKED_BY")
+  private String lockedBy;
+
+  @Column(name = "LEASE_UNTIL")
+  private OffsetDateTime leaseUntil;
+
+  @Column(name = "ATTEMPT_COUNT", nullable = false)
+  private Integer attemptCount = 0;
+
+  @Column(name = "NEXT_ATTEMPT_AT")
+  private OffsetDateTime nextAttemptAt;
+
   @CreatedDate
   @Column(name = "CREATED_DATE")
   private OffsetDateTime createdDate;
@@ -76,4 +88,8 @@ public class GenericTaskQueue {
   public boolean isFailed() {
     return GenericTaskQueueStatus.FAILED.getId().equals(status);
   }
+
+  public boolean isDead() {
+    return GenericTaskQueueStatus.DEAD.getId().equals(status);
+  }
 }
\ No newline at end of file
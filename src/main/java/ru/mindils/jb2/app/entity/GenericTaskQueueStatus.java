@@ -8,7 +8,8 @@ public enum GenericTaskQueueStatus implements EnumClass<String> {
   NEW("NEW"),
   PROCESSING("PROCESSING"),
   COMPLETED("COMPLETED"),
-  FAILED("FAILED");
+  FAILED("FAILED"),
+  DEAD("DEAD");
 
   private final String id;
 
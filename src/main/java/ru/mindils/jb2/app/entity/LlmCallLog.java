@@ -70,6 +70,10 @@ public class LlmCallLog {
   @Column(name = "TOTAL_TOKENS")
   private Integer totalTokens;
 
+  // Токены промпта, которые провайдер взял из своего кэша префиксов
+  @Column(name = "CACHED_TOKENS")
+  private Integer cachedTokens;
+
   @Column(name = "COST")
   private Double cost;
 
@@ -96,6 +100,10 @@ public class LlmCallLog {
   @Column(name = "RETRY_COUNT")
   private Integer retryCount = 0;
 
+  // Ответ взят из кэша ответов LLM, запрос к модели не выполнялся
+  @Column(name = "CACHE_HIT")
+  private Boolean cacheHit = false;
+
   @CreatedDate
   @Column(name = "CREATED_DATE")
   private OffsetDateTime createdDate;
@@ -122,6 +130,16 @@ public class LlmCallLog {
     this.httpStatusCode = 200;
   }
 
+  public void completeFromCache(String response, String actualModelUsed, long durationMs) {
+    completeWithSuccess(response, durationMs);
+    this.cacheHit = true;
+    this.actualModelUsed = actualModelUsed;
+    this.promptTokens = 0;
+    this.completionTokens = 0;
+    this.totalTokens = 0;
+    this.cachedTokens = 0;
+  }
+
   public void completeWithError(Exception e, Integer httpStatus, String errorType, long durationMs) {
     this.success = false;
     this.httpStatusCode = httpStatus;
@@ -94,6 +94,12 @@ public class Vacancy {
   @Column(name = "key_skills", columnDefinition = "jsonb")
   private JsonNode keySkills;
 
+  /**
+   * Хэш нормализованного содержимого, по которому выполняется LLM-анализ, см. VacancyContentHasher
+   */
+  @Column(name = "CONTENT_HASH", length = 64)
+  private String contentHash;
+
   @Convert(converter = JsonNodeConverter.class)
   @Column(name = "professional_roles", columnDefinition = "jsonb")
   private JsonNode professionalRoles;
@@ -56,6 +56,12 @@ public class VacancyLlmAnalysis {
   @Lob
   private String analyzeDataString;
 
+  /**
+   * Хэш содержимого вакансии, по которому выполнен анализ
+   */
+  @Column(name = "CONTENT_HASH", length = 64)
+  private String contentHash;
+
   @Column(name = "status")
   private String status;
 
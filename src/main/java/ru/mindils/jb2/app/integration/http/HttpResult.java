@@ -1,10 +1,14 @@
 package ru.mindils.jb2.app.integration.http;
 
 import java.net.URI;
+import java.net.http.HttpHeaders;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Результат HTTP-запроса. rawBody заполнен, только если сырое тело запрошено явно
+ */
 public record HttpResult<T>(
     T data,
     int status,
@@ -12,4 +16,16 @@ public record HttpResult<T>(
     String rawBody,
     URI uri,
     Instant receivedAt
-) {}
\ No newline at end of file
+) {
+
+  /**
+   * Ресурс не изменился с момента, описанного переданными валидаторами (304): тела и data нет
+   */
+  public boolean notModified() {
+    return status == 304;
+  }
+
+  public HttpValidators validators() {
+    return HttpValidators.from(HttpHeaders.of(headers, (name, value) -> true));
+  }
+}
@@ -0,0 +1,20 @@
+package ru.mindils.jb2.app.integration.http;
+
+import java.net.http.HttpHeaders;
+
+/**
+ * Валидаторы HTTP-кэша ответа (ETag / Last-Modified) для условных запросов
+ */
+public record HttpValidators(String etag, String lastModified) {
+
+  public static HttpValidators from(HttpHeaders headers) {
+    return new HttpValidators(
+        headers.firstValue("ETag").orElse(null),
+        headers.firstValue("Last-Modified").orElse(null)
+    );
+  }
+
+  public boolean isEmpty() {
+    return etag == null && lastModified == null;
+  }
+}
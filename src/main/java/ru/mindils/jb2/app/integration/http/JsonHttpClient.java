@@ -2,65 +2,213 @@ package ru.mindils.jb2.app.integration.http;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
 
+/**
+ * HTTP-клиент JSON API. Тело ответа по умолчанию разбирается потоково прямо из сокета
+ * и не сохраняется; сырое тело в {@link HttpResult#rawBody()} нужно запрашивать явно (keepRawBody).
+ * Запросы ограничены по времени (jb2.hh.request-timeout) и принимают сжатые gzip ответы
+ */
 @Component
 public class JsonHttpClient {
 
+  // Сколько раз повторять запрос, получивший 429
+  private static final int MAX_THROTTLE_RETRIES = 2;
+
+  // Признаки в теле 403, по которым отказ считается ограничением частоты, а не запретом доступа
+  private static final List<String> RATE_LIMIT_MARKERS = List.of(
+      "captcha_required", "limit_exceeded", "too_many_requests", "rate limit");
+
   private final HttpClient client;
   private final ObjectMapper mapper;
+  private final RequestRateLimiter rateLimiter;
+  private final Duration requestTimeout;
+  private final boolean compression;
 
-  public JsonHttpClient(HttpClient client, ObjectMapper mapper) {
+  public JsonHttpClient(HttpClient client, ObjectMapper mapper, RequestRateLimiter rateLimiter,
+                        @Value("${jb2.hh.request-timeout:PT30S}") Duration requestTimeout,
+                        @Value("${jb2.hh.compression:true}") boolean compression) {
     this.client = client;
     this.mapper = mapper;
+    this.rateLimiter = rateLimiter;
+    this.requestTimeout = requestTimeout;
+    this.compression = compression;
   }
 
   public <T> HttpResult<T> retrieve(URI uri, Class<T> type) throws IOException, InterruptedException {
-    HttpRequest req = HttpRequest.newBuilder().uri(uri).GET().build();
-    HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
+    return retrieve(uri, type, false);
+  }
+
+  public <T> HttpResult<T> retrieve(URI uri, Class<T> type, boolean keepRawBody)
+      throws IOException, InterruptedException {
+    return execute(newRequest(uri).build(), mapper.readerFor(type), keepRawBody);
+  }
+
+  public <T> HttpResult<T> retrieve(URI uri, TypeReference<T> typeRef) throws IOException, InterruptedException {
+    return retrieve(uri, typeRef, false);
+  }
+
+  public <T> HttpResult<T> retrieve(URI uri, TypeReference<T> typeRef, boolean keepRawBody)
+      throws IOException, InterruptedException {
+    return execute(newRequest(uri).build(), mapper.readerFor(typeRef), keepRawBody);
+  }
 
-    if (resp.statusCode() / 100 != 2) {
-      throw new ExternalServiceException("GET " + uri + " failed with " + resp.statusCode(), resp.body());
+  /**
+   * Условный GET: с валидаторами предыдущего ответа сервер может ответить 304,
+   * тогда тело не загружается и не разбирается, а результат помечен {@link HttpResult#notModified()}
+   */
+  public <T> HttpResult<T> retrieveIfModified(URI uri, Class<T> type, HttpValidators validators)
+      throws IOException, InterruptedException {
+    HttpRequest.Builder builder = newRequest(uri);
+    if (validators != null && validators.etag() != null) {
+      builder.header("If-None-Match", validators.etag());
+    }
+    if (validators != null && validators.lastModified() != null) {
+      builder.header("If-Modified-Since", validators.lastModified());
     }
 
-    T data = mapper.readValue(resp.body(), type);
-    return new HttpResult<>(
-        data,
-        resp.statusCode(),
-        resp.headers().map(),
-        resp.body(),
-        uri,
-        Instant.now()
-    );
+    return execute(builder.build(), mapper.readerFor(type), false);
   }
 
-  public <T> HttpResult<T> retrieve(URI uri, TypeReference<T> typeRef) throws IOException, InterruptedException {
-    HttpRequest req = HttpRequest.newBuilder().uri(uri).GET().build();
-    HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-
-    if (resp.statusCode() / 100 != 2) {
-      throw new ExternalServiceException(
-          "GET " + uri + " failed with " + resp.statusCode(),
-          resp.body(),
-          resp.statusCode()
+  private <T> HttpResult<T> execute(HttpRequest req, ObjectReader reader, boolean keepRawBody)
+      throws IOException, InterruptedException {
+    HttpResponse<InputStream> resp = send(req);
+
+    if (resp.statusCode() == 304) {
+      resp.body().close();
+      return new HttpResult<>(null, resp.statusCode(), resp.headers().map(), null, req.uri(), Instant.now());
+    }
+
+    try (InputStream body = decode(resp)) {
+
+      if (resp.statusCode() / 100 != 2) {
+        String errorBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        if (resp.statusCode() == 403 && isRateLimited(resp.headers(), errorBody)) {
+          rateLimiter.onThrottled(retryAfter(resp.headers()));
+        }
+        throw new ExternalServiceException(
+            "GET " + req.uri() + " failed with " + resp.statusCode(),
+            errorBody,
+            resp.statusCode()
+        );
+      }
+
+      T data;
+      String rawBody = null;
+      if (keepRawBody) {
+        byte[] bytes = body.readAllBytes();
+        rawBody = new String(bytes, StandardCharsets.UTF_8);
+        data = reader.readValue(bytes);
+      } else {
+        data = reader.readValue(body);
+      }
+
+      return new HttpResult<>(
+          data,
+          resp.statusCode(),
+          resp.headers().map(),
+          rawBody,
+          req.uri(),
+          Instant.now()
       );
     }
+  }
+
+  private HttpRequest.Builder newRequest(URI uri) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder()
+        .uri(uri)
+        .timeout(requestTimeout)
+        .GET();
+    if (compression) {
+      builder.header("Accept-Encoding", "gzip");
+    }
+    return builder;
+  }
+
+  /**
+   * HttpClient не распаковывает сжатые ответы сам: gzip распаковываем потоково
+   */
+  private InputStream decode(HttpResponse<InputStream> resp) throws IOException {
+    String encoding = resp.headers().firstValue("Content-Encoding").orElse("");
+    if ("gzip".equalsIgnoreCase(encoding.trim())) {
+      return new GZIPInputStream(resp.body());
+    }
+    return resp.body();
+  }
+
+  /**
+   * Отправляет запрос в пределах квоты. На 429 ограничитель снижает частоту, и запрос повторяется
+   * после паузы Retry-After (не больше MAX_THROTTLE_RETRIES раз). 403 разбирается в execute:
+   * частоту снижает только отказ, помеченный как ограничение (см. isRateLimited)
+   */
+  private HttpResponse<InputStream> send(HttpRequest req) throws IOException, InterruptedException {
+    for (int attempt = 0; ; attempt++) {
+      rateLimiter.acquire();
+      HttpResponse<InputStream> resp = client.send(req, HttpResponse.BodyHandlers.ofInputStream());
+
+      if (resp.statusCode() != 429) {
+        return resp;
+      }
 
-    T data = mapper.readValue(resp.body(), typeRef);
-    return new HttpResult<>(
-        data,
-        resp.statusCode(),
-        resp.headers().map(),
-        resp.body(),
-        uri,
-        Instant.now()
-    );
+      rateLimiter.onThrottled(retryAfter(resp.headers()));
+      if (attempt >= MAX_THROTTLE_RETRIES) {
+        return resp;
+      }
+      // Тело отклоненного ответа не нужно, но поток надо закрыть, чтобы освободить соединение
+      resp.body().close();
+    }
+  }
+
+  /**
+   * 403 считается ограничением частоты, если сервер прислал Retry-After или исчерпанный X-RateLimit-Remaining,
+   * либо тело ошибки содержит один из RATE_LIMIT_MARKERS. Остальные 403 (запрет доступа, бан токена) частоту не меняют
+   */
+  private boolean isRateLimited(HttpHeaders headers, String body) {
+    if (headers.firstValue("Retry-After").isPresent()
+        || "0".equals(headers.firstValue("X-RateLimit-Remaining").map(String::trim).orElse(null))) {
+      return true;
+    }
+    String lowerBody = body.toLowerCase(Locale.ROOT);
+    return RATE_LIMIT_MARKERS.stream().anyMatch(lowerBody::contains);
+  }
+
+  /**
+   * Retry-After в секундах или HTTP-датой; null, если заголовка нет или он не разобран
+   */
+  private Duration retryAfter(HttpHeaders headers) {
+    String value = headers.firstValue("Retry-After").orElse(null);
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      return Duration.ofSeconds(Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      try {
+        Duration delay = Duration.between(Instant.now(),
+            ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        return delay.isNegative() ? Duration.ZERO : delay;
+      } catch (DateTimeParseException ignored) {
+        return null;
+      }
+    }
   }
 }
@@ -0,0 +1,126 @@
+package ru.mindils.jb2.app.integration.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Адаптивное ограничение частоты запросов к внешнему API (квота hh.ru), общее для всех потоков.
+ * Token bucket: токены пополняются с текущей частотой, запас не больше jb2.hh.burst.
+ * При ограничении со стороны сервера частота уменьшается вдвое, а запросы приостанавливаются на Retry-After;
+ * ответы, пришедшие во время уже действующей паузы, продлевают паузу, но частоту повторно не снижают;
+ * после каждого спокойного периода (jb2.hh.rate-probe-interval) без ограничений частота
+ * снова повышается на шаг, но не выше jb2.hh.requests-per-second
+ */
+@Component
+public class RequestRateLimiter {
+
+  private static final Logger log = LoggerFactory.getLogger(RequestRateLimiter.class);
+
+  // Пауза после ограничения, если сервер не прислал Retry-After
+  private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(5);
+
+  private final double maxRate;
+  private final double minRate;
+  private final double burst;
+  private final long probeIntervalNanos;
+
+  // Текущая частота (запросов в секунду) и запас токенов
+  private double rate;
+  private double tokens;
+  private long lastRefill = System.nanoTime();
+
+  // До какого момента запросы приостановлены после ограничения и когда оно было последний раз
+  private long pausedUntil = System.nanoTime();
+  private long lastRateChange = System.nanoTime();
+
+  public RequestRateLimiter(@Value("${jb2.hh.requests-per-second:5}") double requestsPerSecond,
+                            @Value("${jb2.hh.min-requests-per-second:0.5}") double minRequestsPerSecond,
+                            @Value("${jb2.hh.burst:5}") double burst,
+                            @Value("${jb2.hh.rate-probe-interval:PT1M}") Duration probeInterval) {
+    if (requestsPerSecond <= 0 || minRequestsPerSecond <= 0) {
+      throw new IllegalArgumentException("jb2.hh.requests-per-second and jb2.hh.min-requests-per-second must be positive");
+    }
+    this.maxRate = requestsPerSecond;
+    this.minRate = Math.min(minRequestsPerSecond, requestsPerSecond);
+    this.burst = Math.max(1, burst);
+    this.probeIntervalNanos = probeInterval.toNanos();
+    this.rate = requestsPerSecond;
+    this.tokens = this.burst;
+  }
+
+  /**
+   * Блокирует поток, пока запрос не уложится в бюджет
+   */
+  public void acquire() throws InterruptedException {
+    while (true) {
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        probeUp(now);
+        refill(now);
+
+        if (now < pausedUntil) {
+          waitNanos = pausedUntil - now;
+        } else if (tokens >= 1) {
+          tokens -= 1;
+          return;
+        } else {
+          waitNanos = (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+      }
+      TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1));
+    }
+  }
+
+  /**
+   * Сервер ограничил запросы: снижаем частоту и приостанавливаем запросы.
+   * Параллельные запросы, отправленные до паузы, получают ограничение пачкой - на такую пачку
+   * частота снижается один раз, остальные ответы только продлевают паузу
+   *
+   * @param retryAfter пауза из заголовка Retry-After или null
+   */
+  public synchronized void onThrottled(Duration retryAfter) {
+    long now = System.nanoTime();
+    Duration pause = retryAfter != null ? retryAfter : DEFAULT_BACKOFF;
+
+    boolean lowerRate = now >= pausedUntil;
+    if (lowerRate) {
+      rate = Math.max(minRate, rate / 2);
+      lastRateChange = now;
+    }
+    tokens = 0;
+    pausedUntil = Math.max(pausedUntil, now + pause.toNanos());
+
+    if (lowerRate) {
+      log.warn("Request rate limited by server, backing off for {} and lowering rate to {} req/s",
+          pause, String.format("%.2f", rate));
+    } else {
+      log.debug("Request rate limited by server during backoff, extending pause by {}", pause);
+    }
+  }
+
+  public synchronized double getCurrentRate() {
+    return rate;
+  }
+
+  private void refill(long now) {
+    tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+    lastRefill = now;
+  }
+
+  private void probeUp(long now) {
+    if (rate >= maxRate || now - lastRateChange < probeIntervalNanos) {
+      return;
+    }
+    refill(now);
+    rate = Math.min(maxRate, rate + maxRate / 10);
+    lastRateChange = now;
+    log.info("No rate limiting for {} s, raising rate to {} req/s",
+        TimeUnit.NANOSECONDS.toSeconds(probeIntervalNanos), String.format("%.2f", rate));
+  }
+}
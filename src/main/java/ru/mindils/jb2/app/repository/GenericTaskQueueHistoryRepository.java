@@ -0,0 +1,159 @@
+package ru.mindils.jb2.app.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * История завершенных задач очереди (jb2_generic_task_queue_history),
+ * секционированная по месяцам даты завершения
+ */
+@Repository
+public class GenericTaskQueueHistoryRepository {
+
+  private static final String HISTORY_TABLE = "jb2_generic_task_queue_history";
+  private static final Pattern PARTITION_NAME = Pattern.compile(HISTORY_TABLE + "_y(\\d{4})m(\\d{2})");
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'_y'yyyy'm'MM");
+
+  @PersistenceContext
+  private EntityManager em;
+
+  /**
+   * Переносит до {@code limit} завершенных задач (COMPLETED/FAILED) из очереди в историю одним выражением
+   *
+   * @return количество перенесенных задач
+   */
+  @Transactional
+  public int archiveFinishedTasks(int limit) {
+    var sql = """
+        WITH moved AS (
+            DELETE FROM jb2_generic_task_queue q
+            WHERE q.id IN (
+                SELECT id
+                FROM jb2_generic_task_queue
+                WHERE status IN (?1::varchar, ?2::varchar)
+                ORDER BY id
+                LIMIT ?3
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING q.id, q.entity_name, q.entity_id, q.task_type, q.status, q.error_message,
+                      q.priority, q.attempt_count, q.created_date, q.last_modified_date
+        )
+        INSERT INTO jb2_generic_task_queue_history
+            (id, entity_name, entity_id, task_type, status, error_message,
+             priority, attempt_count, created_date, finished_date)
+        SELECT id, entity_name, entity_id, task_type, status, error_message,
+               priority, attempt_count, created_date, COALESCE(last_modified_date, NOW())
+        FROM moved
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, GenericTaskQueueStatus.COMPLETED.getId())
+        .setParameter(2, GenericTaskQueueStatus.FAILED.getId())
+        .setParameter(3, limit)
+        .executeUpdate();
+  }
+
+  /**
+   * Создает месячную секцию истории, если ее еще нет. Строки этого месяца, успевшие попасть
+   * в секцию по умолчанию, переносятся в новую секцию (см. jb2_generic_task_queue_history_ensure_partition)
+   *
+   * @return true, если секция создана
+   */
+  @Transactional
+  public boolean createPartitionIfNotExists(YearMonth month) {
+    Object created = em.createNativeQuery("SELECT jb2_generic_task_queue_history_ensure_partition(?1::varchar::date)")
+        .setParameter(1, month.atDay(1).toString())
+        .getSingleResult();
+
+    return Boolean.TRUE.equals(created);
+  }
+
+  /**
+   * Возвращает месяцы, для которых существуют секции истории
+   */
+  public List<YearMonth> findPartitionMonths() {
+    var sql = """
+        SELECT c.relname
+        FROM pg_inherits i
+        JOIN pg_class c ON c.oid = i.inhrelid
+        JOIN pg_class p ON p.oid = i.inhparent
+        WHERE p.relname = ?1
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object> names = em.createNativeQuery(sql)
+        .setParameter(1, HISTORY_TABLE)
+        .getResultList();
+
+    return names.stream()
+        .map(name -> PARTITION_NAME.matcher((String) name))
+        .filter(Matcher::matches)
+        .map(m -> YearMonth.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))))
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Удаляет секцию истории целиком. DROP не вызывает триггеры, поэтому дельты счетчиков
+   * на содержимое секции пишутся вручную в той же транзакции
+   */
+  @Transactional
+  public void dropPartition(YearMonth month) {
+    String partition = partitionName(month);
+
+    em.createNativeQuery(String.format("""
+            INSERT INTO jb2_generic_task_queue_counter_delta (task_type, status, task_delta, retry_delta)
+            SELECT task_type, status, -COUNT(*), -COUNT(*) FILTER (WHERE attempt_count > 0)
+            FROM %s
+            WHERE task_type IS NOT NULL
+              AND status IS NOT NULL
+            GROUP BY task_type, status
+            """, partition))
+        .executeUpdate();
+
+    em.createNativeQuery("DROP TABLE " + partition).executeUpdate();
+  }
+
+  /**
+   * Количество задач указанного типа, успешно завершенных начиная с {@code since}.
+   * Учитывает и еще не перенесенные в историю задачи; условие по finished_date отсекает лишние секции
+   */
+  public long countCompletedSince(GenericTaskQueueType queueType, OffsetDateTime since) {
+    var sql = """
+        SELECT (SELECT COUNT(*)
+                FROM jb2_generic_task_queue_history
+                WHERE task_type = ?1::varchar
+                  AND status = ?2::varchar
+                  AND finished_date >= ?3)
+             + (SELECT COUNT(*)
+                FROM jb2_generic_task_queue
+                WHERE task_type = ?1::varchar
+                  AND status = ?2::varchar
+                  AND last_modified_date >= ?3)
+        """;
+
+    Number count = (Number) em.createNativeQuery(sql)
+        .setParameter(1, queueType.getId())
+        .setParameter(2, GenericTaskQueueStatus.COMPLETED.getId())
+        .setParameter(3, since)
+        .getSingleResult();
+
+    return count.longValue();
+  }
+
+  private String partitionName(YearMonth month) {
+    return HISTORY_TABLE + month.format(PARTITION_SUFFIX);
+  }
+}
@@ -1,7 +1,5 @@
 package ru.mindils.jb2.app.repository;
 
-import io.jmix.core.DataManager;
-import io.jmix.core.entity.KeyValueEntity;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.stereotype.Repository;
@@ -19,16 +17,15 @@ import java.util.stream.Collectors;
 @Repository
 public class GenericTaskQueueRepository {
 
-  private final DataManager dataManager;
   @PersistenceContext
   private EntityManager em;
 
-  public GenericTaskQueueRepository(DataManager dataManager) {
-    this.dataManager = dataManager;
-  }
-
   /**
-   * Добавляет в очередь все вакансии, которые еще не анализировались и не находятся в очереди
+   * Добавляет в очередь все вакансии, которые еще не анализировались (или анализировались
+   * по другому содержимому, см. content_hash) и не находятся в очереди.
+   * Повторная постановка активной задачи отсекается уникальным индексом
+   * IDX_JB2_GENERIC_TASK_QUEUE_ACTIVE_UK (NEW/PROCESSING/DEAD) через ON CONFLICT DO NOTHING,
+   * поэтому стоимость не растет вместе с историей очереди и параллельные вызовы не создают дублей.
    */
   public int enqueueForLlmAnalyzed(GenericTaskQueueType queueType, String analyzeType) {
     var sql = """
@@ -49,88 +46,440 @@ public class GenericTaskQueueRepository {
                   SELECT 1
                   FROM jb2_vacancy_llm_analysis a
                   WHERE a.vacancy_id = v.id
-                    AND a.analyze_type = ?2 
-              )
-          AND NOT EXISTS (
-                  SELECT 1
-                  FROM jb2_generic_task_queue q
-                  WHERE q.entity_id   = v.id
-                    AND q.entity_name = 'jb2_vacancy'
-                    AND q.task_type   = ?1::varchar
-                    AND q.status IN (?4::varchar, ?5::varchar, ?6::varchar)
+                    AND a.analyze_type = ?2
+                    AND (a.content_hash IS NULL OR v.content_hash IS NULL OR a.content_hash = v.content_hash)
               )
         AND (v.archived IS NULL OR v.archived = false)
+        ON CONFLICT DO NOTHING
         """;
 
     return em.createNativeQuery(sql)
         .setParameter(1, queueType.getId())
         .setParameter(2, analyzeType)
         .setParameter(3, GenericTaskQueueStatus.NEW.getId())
+        .executeUpdate();
+  }
+
+  /**
+   * Ставит в очередь переданные сущности одним INSERT.
+   * Сущности, для которых уже есть активная задача, пропускаются через ON CONFLICT DO NOTHING.
+   *
+   * @return количество действительно добавленных задач
+   */
+  @Transactional
+  public int enqueueEntities(String entityName, List<String> entityIds, GenericTaskQueueType queueType) {
+    if (entityIds.isEmpty()) {
+      return 0;
+    }
+
+    var sql = """
+        INSERT INTO jb2_generic_task_queue
+            (entity_name, entity_id, task_type, status,
+             error_message, priority, created_date, last_modified_date)
+        SELECT
+            ?1::varchar            AS entity_name,
+            ids.id                 AS entity_id,
+            ?3::varchar            AS task_type,
+            ?4::varchar            AS status,
+            NULL                   AS error_message,
+            1                      AS priority,
+            NOW()                  AS created_date,
+            NOW()                  AS last_modified_date
+        FROM unnest(string_to_array(?2::varchar, ',')) AS ids(id)
+        ON CONFLICT DO NOTHING
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, entityName)
+        .setParameter(2, String.join(",", entityIds))
+        .setParameter(3, queueType.getId())
         .setParameter(4, GenericTaskQueueStatus.NEW.getId())
+        .executeUpdate();
+  }
+
+  /**
+   * Возвращает DEAD-задачи указанных сущностей в NEW со сброшенным счетчиком попыток.
+   * DEAD-задача занимает место в уникальном индексе активных задач, поэтому {@link #enqueueEntities}
+   * для такой сущности ничего не добавляет; оживить ее нужно явно (например, когда изменились данные)
+   *
+   * @return количество оживленных задач
+   */
+  @Transactional
+  public int reviveDeadTasks(String entityName, List<String> entityIds, GenericTaskQueueType queueType) {
+    if (entityIds.isEmpty()) {
+      return 0;
+    }
+
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET status             = ?1::varchar,
+            error_message      = NULL,
+            attempt_count      = 0,
+            next_attempt_at    = NULL,
+            last_modified_date = NOW()
+        WHERE entity_name = ?2::varchar
+          AND task_type = ?3::varchar
+          AND status = ?4::varchar
+          AND entity_id = ANY(string_to_array(?5::varchar, ','))
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, GenericTaskQueueStatus.NEW.getId())
+        .setParameter(2, entityName)
+        .setParameter(3, queueType.getId())
+        .setParameter(4, GenericTaskQueueStatus.DEAD.getId())
+        .setParameter(5, String.join(",", entityIds))
+        .executeUpdate();
+  }
+
+  /**
+   * Атомарно забирает до {@code limit} задач из NEW в PROCESSING для указанного исполнителя,
+   * распределяя их между типами задач пропорционально весам.
+   * <p>
+   * Внутри типа задачи упорядочены по {@code claim_rank}: это created_date, сдвинутая на priority
+   * шагов старения (заполняется триггером), поэтому старые задачи низкого приоритета не голодают,
+   * а выборка идет по индексу (task_type, claim_rank).
+   * Из каждого типа отдельным запросом блокируется не больше {@code slotsByType} готовых задач
+   * (FOR UPDATE SKIP LOCKED): строки, уже заблокированные другим обработчиком, пропускаются,
+   * и LIMIT добирает следующие, так что параллельные обработчики не мешают друг другу.
+   * Между типами используется stride-планирование: n-я задача типа получает ключ n / weight,
+   * так что при очереди во всех типах на 1 задачу веса 1 приходится 3 задачи веса 3,
+   * а если в каком-то типе задач нет, его слоты достаются остальным.
+   * Заблокированные, но не выбранные задачи остаются в NEW и освобождаются при коммите.
+   * <p>
+   * Задача выдается в аренду на {@code leaseSeconds}, исполнитель продлевает ее через {@link #renewLease}.
+   * Задачи, отложенные после ошибки ({@code next_attempt_at} в будущем), не захватываются.
+   *
+   * @return id захваченных задач (порядок не гарантируется)
+   */
+  @Transactional
+  public List<Long> claimBatch(Map<GenericTaskQueueType, Integer> slotsByType,
+                               Map<GenericTaskQueueType, Integer> weights,
+                               int limit, String workerId, long leaseSeconds) {
+    if (limit <= 0) {
+      return List.of();
+    }
+
+    // Кандидаты каждого типа с ключом stride-планирования
+    record Candidate(long id, double stride, String taskType) {
+    }
+    List<Candidate> candidates = new ArrayList<>();
+
+    var lockSql = """
+        SELECT id
+        FROM jb2_generic_task_queue
+        WHERE task_type = ?1::varchar
+          AND status = ?2::varchar
+          AND (next_attempt_at IS NULL OR next_attempt_at <= NOW())
+        ORDER BY claim_rank
+        LIMIT ?3
+        FOR UPDATE SKIP LOCKED
+        """;
+
+    slotsByType.forEach((type, slots) -> {
+      if (slots <= 0) {
+        return;
+      }
+
+      @SuppressWarnings("unchecked")
+      List<Object> ids = em.createNativeQuery(lockSql)
+          .setParameter(1, type.getId())
+          .setParameter(2, GenericTaskQueueStatus.NEW.getId())
+          .setParameter(3, Math.min(slots, limit))
+          .getResultList();
+
+      int weight = Math.max(1, weights.getOrDefault(type, 1));
+      for (int i = 0; i < ids.size(); i++) {
+        candidates.add(new Candidate(((Number) ids.get(i)).longValue(), (i + 1) / (double) weight, type.getId()));
+      }
+    });
+
+    if (candidates.isEmpty()) {
+      return List.of();
+    }
+
+    String selectedIds = candidates.stream()
+        .sorted(Comparator.comparingDouble(Candidate::stride).thenComparing(Candidate::taskType))
+        .limit(limit)
+        .map(candidate -> String.valueOf(candidate.id()))
+        .collect(Collectors.joining(","));
+
+    var claimSql = """
+        UPDATE jb2_generic_task_queue
+        SET status             = ?2::varchar,
+            locked_by          = ?3::varchar,
+            lease_until        = NOW() + (?4 * INTERVAL '1 second'),
+            last_modified_date = NOW()
+        WHERE id = ANY (string_to_array(?1::varchar, ',')::bigint[])
+        RETURNING id
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object> rows = em.createNativeQuery(claimSql)
+        .setParameter(1, selectedIds)
+        .setParameter(2, GenericTaskQueueStatus.PROCESSING.getId())
+        .setParameter(3, workerId)
+        .setParameter(4, leaseSeconds)
+        .getResultList();
+
+    return rows.stream()
+        .map(row -> ((Number) row).longValue())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Через сколько секунд станет доступна ближайшая отложенная после ошибки задача указанных типов
+   *
+   * @return число секунд (не меньше 1) или null, если отложенных задач нет
+   */
+  public Long getSecondsUntilNextAttempt(List<GenericTaskQueueType> types) {
+    if (types.isEmpty()) {
+      return null;
+    }
+
+    var sql = """
+        SELECT CEIL(EXTRACT(EPOCH FROM MIN(next_attempt_at) - NOW()))
+        FROM jb2_generic_task_queue
+        WHERE task_type = ANY (string_to_array(?1::varchar, ','))
+          AND status = ?2::varchar
+          AND next_attempt_at IS NOT NULL
+        """;
+
+    Object seconds = em.createNativeQuery(sql)
+        .setParameter(1, types.stream().map(GenericTaskQueueType::getId).collect(Collectors.joining(",")))
+        .setParameter(2, GenericTaskQueueStatus.NEW.getId())
+        .getSingleResult();
+
+    return seconds == null ? null : Math.max(1L, ((Number) seconds).longValue());
+  }
+
+  /**
+   * Продлевает аренду задачи, которая все еще выполняется этим исполнителем
+   *
+   * @return количество обновленных строк: 0, если задача уже не в PROCESSING или ее захватил другой исполнитель
+   */
+  @Transactional
+  public int renewLease(Long taskId, String workerId, long leaseSeconds) {
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET lease_until = NOW() + (?2 * INTERVAL '1 second')
+        WHERE id = ?1
+          AND status = ?3::varchar
+          AND locked_by = ?4::varchar
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, taskId)
+        .setParameter(2, leaseSeconds)
+        .setParameter(3, GenericTaskQueueStatus.PROCESSING.getId())
+        .setParameter(4, workerId)
+        .executeUpdate();
+  }
+
+  /**
+   * Фиксирует итоговый статус задачи, которую выполнял этот исполнитель
+   *
+   * @return количество обновленных строк: 0, если аренду задачи уже забрал другой исполнитель
+   */
+  @Transactional
+  public int completeTask(Long taskId, String workerId, GenericTaskQueueStatus status, String errorMessage) {
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET status             = ?3::varchar,
+            error_message      = ?4,
+            locked_by          = NULL,
+            lease_until        = NULL,
+            last_modified_date = NOW()
+        WHERE id = ?1
+          AND status = ?5::varchar
+          AND locked_by = ?2::varchar
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, taskId)
+        .setParameter(2, workerId)
+        .setParameter(3, status.getId())
+        .setParameter(4, errorMessage)
         .setParameter(5, GenericTaskQueueStatus.PROCESSING.getId())
-        .setParameter(6, GenericTaskQueueStatus.COMPLETED.getId())
+        .executeUpdate();
+  }
+
+  /**
+   * Фиксирует неудачную попытку выполнения задачи.
+   * Если попытки не исчерпаны, задача возвращается в NEW и откладывается с экспоненциальной задержкой
+   * {@code min(maxDelay, baseDelay * 2^attempt)} со случайным разбросом 50-100%, чтобы задачи,
+   * упавшие одновременно (например, из-за rate limit), не вернулись к LLM все разом.
+   * Иначе задача переводится в DEAD.
+   *
+   * @return новый статус задачи или null, если задача не найдена или ее аренду уже забрал другой исполнитель
+   */
+  @Transactional
+  public GenericTaskQueueStatus scheduleRetry(Long taskId, String workerId, String errorMessage, int maxAttempts,
+                                              long baseDelaySeconds, long maxDelaySeconds) {
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET attempt_count      = attempt_count + 1,
+            status             = CASE WHEN attempt_count + 1 >= ?3 THEN ?4::varchar ELSE ?5::varchar END,
+            next_attempt_at    = CASE WHEN attempt_count + 1 >= ?3 THEN NULL
+                                      ELSE NOW() + LEAST(?7, ?6 * POWER(2, LEAST(attempt_count, 30)))
+                                                   * (0.5 + random() / 2) * INTERVAL '1 second'
+                                 END,
+            error_message      = ?2,
+            locked_by          = NULL,
+            lease_until        = NULL,
+            last_modified_date = NOW()
+        WHERE id = ?1
+          AND status = ?9::varchar
+          AND locked_by = ?8::varchar
+        RETURNING status
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object> rows = em.createNativeQuery(sql)
+        .setParameter(1, taskId)
+        .setParameter(2, errorMessage)
+        .setParameter(3, maxAttempts)
+        .setParameter(4, GenericTaskQueueStatus.DEAD.getId())
+        .setParameter(5, GenericTaskQueueStatus.NEW.getId())
+        .setParameter(6, baseDelaySeconds)
+        .setParameter(7, maxDelaySeconds)
+        .setParameter(8, workerId)
+        .setParameter(9, GenericTaskQueueStatus.PROCESSING.getId())
+        .getResultList();
+
+    return rows.isEmpty() ? null : GenericTaskQueueStatus.fromId((String) rows.get(0));
+  }
+
+  /**
+   * Возвращает в NEW задачи, аренда которых истекла (исполнитель перестал ее продлевать).
+   * Задачам в PROCESSING, захваченным до появления аренды, аренда проставлена миграцией.
+   */
+  @Transactional
+  public int releaseExpiredLeases() {
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET status             = ?1::varchar,
+            locked_by          = NULL,
+            lease_until        = NULL,
+            last_modified_date = NOW()
+        WHERE status = ?2::varchar
+          AND lease_until < NOW()
+        """;
+
+    return em.createNativeQuery(sql)
+        .setParameter(1, GenericTaskQueueStatus.NEW.getId())
+        .setParameter(2, GenericTaskQueueStatus.PROCESSING.getId())
         .executeUpdate();
   }
 
   /**
    * Получает количество задач по типу (для обратной совместимости)
-   * Теперь считает задачи в статусе PROCESSING
+   * Теперь считает задачи в статусе NEW
    */
   public Integer getCountByType(GenericTaskQueueType queueType) {
-    return dataManager.loadValue("""
-                select count(e) from jb2_GenericTaskQueue e
-                where e.taskType = :taskType and e.status = :status
-            """, Integer.class)
-        .parameter("taskType", queueType.getId())
-        .parameter("status", GenericTaskQueueStatus.NEW.getId())
-        .one();
+    return getCountByTypeAndStatus(queueType, GenericTaskQueueStatus.NEW);
   }
 
   /**
-   * Получает количество задач по типу и статусу
+   * Получает количество задач по типу и статусу.
+   * Читает счетчик из jb2_generic_task_queue_counter вместе с еще не свернутыми дельтами
+   * (их пишет триггер), а не считает строки очереди
    */
   public Integer getCountByTypeAndStatus(GenericTaskQueueType queueType, GenericTaskQueueStatus status) {
-    return dataManager.loadValue("""
-                select count(e) from jb2_GenericTaskQueue e
-                where e.taskType = :taskType and e.status = :status
-            """, Integer.class)
-        .parameter("taskType", queueType.getId())
-        .parameter("status", status.getId())
-        .one();
+    var sql = """
+        SELECT COALESCE(SUM(task_count), 0)
+        FROM (
+            SELECT task_count
+            FROM jb2_generic_task_queue_counter
+            WHERE task_type = ?1::varchar
+              AND status = ?2::varchar
+            UNION ALL
+            SELECT task_delta
+            FROM jb2_generic_task_queue_counter_delta
+            WHERE task_type = ?1::varchar
+              AND status = ?2::varchar
+        ) c
+        """;
+
+    Object count = em.createNativeQuery(sql)
+        .setParameter(1, queueType.getId())
+        .setParameter(2, status.getId())
+        .getSingleResult();
+
+    return ((Number) count).intValue();
   }
 
   /**
-   * Получает статистику по всем статусам для типа задач
+   * Получает статистику по всем статусам для типа задач.
+   * Читает не больше одной строки счетчиков на статус, поэтому не зависит от размера истории очереди
    */
   public TaskQueueStats getStatsForTaskType(GenericTaskQueueType queueType) {
-    List<KeyValueEntity> results = dataManager.loadValues("""
-                select e.status, count(e) from jb2_GenericTaskQueue e
-                where e.taskType = :taskType
-                group by e.status
-            """)
-        .properties("status", "count")
-        .parameter("taskType", queueType.getId())
-        .list();
+    var sql = """
+        SELECT status, SUM(task_count), SUM(retry_count)
+        FROM (
+            SELECT status, task_count, retry_count
+            FROM jb2_generic_task_queue_counter
+            WHERE task_type = ?1::varchar
+            UNION ALL
+            SELECT status, task_delta, retry_delta
+            FROM jb2_generic_task_queue_counter_delta
+            WHERE task_type = ?1::varchar
+        ) c
+        GROUP BY status
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object[]> results = em.createNativeQuery(sql)
+        .setParameter(1, queueType.getId())
+        .getResultList();
 
     TaskQueueStats stats = new TaskQueueStats();
 
-    for (KeyValueEntity row : results) {
-      String status = row.getValue("status");
-      Long count = row.getValue("count");
+    for (Object[] row : results) {
+      String status = (String) row[0];
+      int count = ((Number) row[1]).intValue();
 
-      if (status != null && count != null) {
-        switch (status) {
-          case "NEW" -> stats.setNewTasks(count.intValue());
-          case "PROCESSING" -> stats.setProcessingTasks(count.intValue());
-          case "COMPLETED" -> stats.setCompletedTasks(count.intValue());
-          case "FAILED" -> stats.setFailedTasks(count.intValue());
+      switch (status) {
+        case "NEW" -> {
+          stats.setNewTasks(count);
+          stats.setRetryingTasks(((Number) row[2]).intValue());
         }
+        case "PROCESSING" -> stats.setProcessingTasks(count);
+        case "COMPLETED" -> stats.setCompletedTasks(count);
+        case "FAILED" -> stats.setFailedTasks(count);
+        case "DEAD" -> stats.setDeadTasks(count);
       }
     }
 
     return stats;
   }
 
+  /**
+   * Сворачивает накопленные триггером дельты в jb2_generic_task_queue_counter.
+   * Удаляются только видимые на момент запроса дельты, дописанные параллельно останутся до следующего раза
+   *
+   * @return количество обновленных строк счетчиков
+   */
+  @Transactional
+  public int foldCounterDeltas() {
+    var sql = """
+        WITH folded AS (
+            DELETE FROM jb2_generic_task_queue_counter_delta
+            RETURNING task_type, status, task_delta, retry_delta
+        )
+        INSERT INTO jb2_generic_task_queue_counter (task_type, status, task_count, retry_count)
+        SELECT task_type, status, SUM(task_delta), SUM(retry_delta)
+        FROM folded
+        GROUP BY task_type, status
+        ORDER BY task_type, status
+        ON CONFLICT (task_type, status) DO UPDATE
+        SET task_count  = jb2_generic_task_queue_counter.task_count + EXCLUDED.task_count,
+            retry_count = jb2_generic_task_queue_counter.retry_count + EXCLUDED.retry_count
+        """;
+
+    return em.createNativeQuery(sql).executeUpdate();
+  }
+
   /**
    * Сбрасывает статус "зависших" задач с PROCESSING на FAILED
    * Полезно для очистки задач, которые могли остаться в статусе PROCESSING после сбоя
@@ -155,21 +504,43 @@ public class GenericTaskQueueRepository {
   }
 
   /**
-   * Перезапускает неудачные задачи - меняет статус с FAILED на NEW
+   * Перезапускает неудачные задачи - меняет статус с FAILED/DEAD на NEW со сбросом счетчика попыток.
+   * Время следующей попытки случайно распределяется в окне {@code spreadSeconds},
+   * чтобы перезапущенные задачи не пошли в обработку одной волной.
    */
-  public int retryFailedTasks(GenericTaskQueueType queueType) {
-    String jpql = """
-            UPDATE jb2_GenericTaskQueue e 
-            SET e.status = :newStatus, 
-                e.errorMessage = null
-            WHERE e.taskType = :taskType 
-              AND e.status = :failedStatus
+  public int retryFailedTasks(GenericTaskQueueType queueType, long spreadSeconds) {
+    var sql = """
+        UPDATE jb2_generic_task_queue
+        SET status             = ?1::varchar,
+            error_message      = NULL,
+            attempt_count      = 0,
+            next_attempt_at    = NOW() + random() * ?5 * INTERVAL '1 second',
+            last_modified_date = NOW()
+        WHERE task_type = ?2::varchar
+          AND status IN (?3::varchar, ?4::varchar)
+          -- Не нарушаем уникальность активных задач: FAILED-задача не оживает, если по той же
+          -- сущности уже есть активная (или DEAD) задача либо более поздняя FAILED
+          AND NOT EXISTS (
+              SELECT 1
+              FROM jb2_generic_task_queue a
+              WHERE a.entity_name = jb2_generic_task_queue.entity_name
+                AND a.entity_id   = jb2_generic_task_queue.entity_id
+                AND a.task_type   = jb2_generic_task_queue.task_type
+                AND a.id         <> jb2_generic_task_queue.id
+                AND (a.status IN (?1::varchar, ?6::varchar)
+                     OR (jb2_generic_task_queue.status = ?3::varchar
+                         AND (a.status = ?4::varchar
+                              OR (a.status = ?3::varchar AND a.id > jb2_generic_task_queue.id))))
+          )
         """;
 
-    return em.createQuery(jpql)
-        .setParameter("newStatus", GenericTaskQueueStatus.NEW.getId())
-        .setParameter("failedStatus", GenericTaskQueueStatus.FAILED.getId())
-        .setParameter("taskType", queueType.getId())
+    return em.createNativeQuery(sql)
+        .setParameter(1, GenericTaskQueueStatus.NEW.getId())
+        .setParameter(2, queueType.getId())
+        .setParameter(3, GenericTaskQueueStatus.FAILED.getId())
+        .setParameter(4, GenericTaskQueueStatus.DEAD.getId())
+        .setParameter(5, spreadSeconds)
+        .setParameter(6, GenericTaskQueueStatus.PROCESSING.getId())
         .executeUpdate();
   }
 
@@ -185,7 +556,8 @@ public class GenericTaskQueueRepository {
   /**
    * Добавляет в очередь все вакансии для полного анализа
    * Вакансия добавляется если у неё отсутствует хотя бы один из требуемых типов анализа
-   * или если анализ не завершен (статус не DONE)
+   * или если анализ не завершен (статус не DONE).
+   * Дубли активных задач отсекаются через ON CONFLICT DO NOTHING, см. {@link #enqueueForLlmAnalyzed}
    */
   public int enqueueForLlmFullAnalysis(GenericTaskQueueType queueType) {
     List<String> allAnalysisTypes = getAllAnalysisTypes();
@@ -219,32 +591,23 @@ public class GenericTaskQueueRepository {
                 WHERE a.vacancy_id = v.id
                   AND a.status IN ('DONE','SKIPPED')
                   AND a.analyze_type IN (%s)
+                  -- Анализ по устаревшему содержимому вакансии не считается выполненным
+                  AND (a.content_hash IS NULL OR v.content_hash IS NULL OR a.content_hash = v.content_hash)
             ) < ?3
-        
-            -- И вакансия не находится в очереди на обработку
-            AND NOT EXISTS (
-                SELECT 1
-                FROM jb2_generic_task_queue q
-                WHERE q.entity_id   = v.id
-                  AND q.entity_name = 'jb2_vacancy'
-                  AND q.task_type   = ?1
-                  AND q.status IN (?4, ?5, ?6)
-            )
             AND (v.archived IS NULL OR v.archived = false)
+        ON CONFLICT DO NOTHING
         """, inClause);
 
     return em.createNativeQuery(sql)
         .setParameter(1, queueType.getId())
         .setParameter(2, GenericTaskQueueStatus.NEW.getId())
         .setParameter(3, totalTypesCount)
-        .setParameter(4, GenericTaskQueueStatus.NEW.getId())
-        .setParameter(5, GenericTaskQueueStatus.PROCESSING.getId())
-        .setParameter(6, GenericTaskQueueStatus.COMPLETED.getId())
         .executeUpdate();
   }
 
   /**
-   * Добавляет в очередь все Java вакансии из v_vacancy_search для обновления
+   * Добавляет в очередь все Java вакансии из v_vacancy_search для обновления.
+   * Дубли активных задач отсекаются через ON CONFLICT DO NOTHING, см. {@link #enqueueForLlmAnalyzed}
    */
   @Transactional
   public int enqueueJavaVacanciesForUpdate() {
@@ -264,22 +627,12 @@ public class GenericTaskQueueRepository {
         FROM v_vacancy_search v
         WHERE v.is_java_vacancy = true
           AND (v.archived IS NULL OR v.archived = false)
-          AND NOT EXISTS (
-              SELECT 1
-              FROM jb2_generic_task_queue q
-              WHERE q.entity_id   = v.id
-                AND q.entity_name = 'jb2_vacancy'
-                AND q.task_type   = ?1::varchar
-                AND q.status IN (?3::varchar, ?4::varchar, ?5::varchar)
-          )
+        ON CONFLICT DO NOTHING
         """;
 
     return em.createNativeQuery(sql)
         .setParameter(1, GenericTaskQueueType.VACANCY_UPDATE.getId())
         .setParameter(2, GenericTaskQueueStatus.NEW.getId())
-        .setParameter(3, GenericTaskQueueStatus.NEW.getId())
-        .setParameter(4, GenericTaskQueueStatus.PROCESSING.getId())
-        .setParameter(5, GenericTaskQueueStatus.COMPLETED.getId())
         .executeUpdate();
   }
 }
\ No newline at end of file
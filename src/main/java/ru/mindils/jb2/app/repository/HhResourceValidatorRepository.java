@@ -0,0 +1,107 @@
+package ru.mindils.jb2.app.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mindils.jb2.app.integration.http.HttpValidators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Валидаторы HTTP-кэша (ETag / Last-Modified) сохраненных ресурсов hh.ru (jb2_hh_resource_validator)
+ */
+@Repository
+public class HhResourceValidatorRepository {
+
+  public static final String VACANCY = "vacancy";
+  public static final String EMPLOYER = "employer";
+
+  private final ObjectMapper objectMapper;
+
+  @PersistenceContext
+  private EntityManager em;
+
+  public HhResourceValidatorRepository(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Возвращает валидаторы для указанных ресурсов (ресурсы без валидаторов в результат не попадают)
+   */
+  public Map<String, HttpValidators> findValidators(String resourceType, Collection<String> resourceIds) {
+    if (resourceIds.isEmpty()) {
+      return Map.of();
+    }
+
+    var sql = """
+        SELECT resource_id, etag, last_modified
+        FROM jb2_hh_resource_validator
+        WHERE resource_type = ?1::varchar
+          AND resource_id = ANY(string_to_array(?2::varchar, ','))
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = em.createNativeQuery(sql)
+        .setParameter(1, resourceType)
+        .setParameter(2, String.join(",", resourceIds))
+        .getResultList();
+
+    Map<String, HttpValidators> result = new HashMap<>();
+    for (Object[] row : rows) {
+      result.put((String) row[0], new HttpValidators((String) row[1], (String) row[2]));
+    }
+    return result;
+  }
+
+  /**
+   * Сохраняет валидаторы одним выражением. Значения передаются JSON-массивом,
+   * так как Last-Modified и ETag могут содержать запятые
+   */
+  @Transactional
+  public void saveValidators(String resourceType, Map<String, HttpValidators> validators) {
+    List<Map<String, String>> rows = new ArrayList<>();
+    validators.forEach((resourceId, value) -> {
+      if (value != null && !value.isEmpty()) {
+        Map<String, String> row = new LinkedHashMap<>();
+        row.put("resource_id", resourceId);
+        row.put("etag", value.etag());
+        row.put("last_modified", value.lastModified());
+        rows.add(row);
+      }
+    });
+    if (rows.isEmpty()) {
+      return;
+    }
+
+    var sql = """
+        INSERT INTO jb2_hh_resource_validator (resource_type, resource_id, etag, last_modified, updated_date)
+        SELECT ?1::varchar, r.resource_id, r.etag, r.last_modified, NOW()
+        FROM jsonb_to_recordset(?2::jsonb) AS r(resource_id varchar, etag varchar, last_modified varchar)
+        ON CONFLICT (resource_type, resource_id) DO UPDATE
+        SET etag          = EXCLUDED.etag,
+            last_modified = EXCLUDED.last_modified,
+            updated_date  = EXCLUDED.updated_date
+        """;
+
+    em.createNativeQuery(sql)
+        .setParameter(1, resourceType)
+        .setParameter(2, toJson(rows))
+        .executeUpdate();
+  }
+
+  private String toJson(List<Map<String, String>> rows) {
+    try {
+      return objectMapper.writeValueAsString(rows);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Failed to serialize HTTP validators", e);
+    }
+  }
+}
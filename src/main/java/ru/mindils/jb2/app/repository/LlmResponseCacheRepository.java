@@ -0,0 +1,107 @@
+package ru.mindils.jb2.app.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Сохраненные ответы LLM по ключу содержимого запроса (jb2_llm_response_cache)
+ */
+@Repository
+public class LlmResponseCacheRepository {
+
+  @PersistenceContext
+  private EntityManager em;
+
+  /**
+   * Сохраненный ответ не старше notBefore вместе с моментом сохранения
+   */
+  public Optional<StoredResponse> find(String cacheKey, OffsetDateTime notBefore) {
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = em.createNativeQuery("""
+            SELECT response, actual_model_used, source_call_log_id, created_date
+            FROM jb2_llm_response_cache
+            WHERE cache_key = ?1::varchar
+              AND created_date >= ?2
+            """)
+        .setParameter(1, cacheKey)
+        .setParameter(2, notBefore)
+        .getResultList();
+
+    if (rows.isEmpty()) {
+      return Optional.empty();
+    }
+    Object[] row = rows.get(0);
+    Long sourceCallLogId = row[2] != null ? ((Number) row[2]).longValue() : null;
+    Instant createdDate = row[3] instanceof OffsetDateTime offsetDateTime
+        ? offsetDateTime.toInstant()
+        : ((Timestamp) row[3]).toInstant();
+    return Optional.of(new StoredResponse(
+        new CachedResponse((String) row[0], (String) row[1], sourceCallLogId), createdDate));
+  }
+
+  /**
+   * Сохраняет ответ. Устаревшая запись с тем же ключом перезаписывается, свежая остается как есть
+   */
+  @Transactional
+  public void save(String cacheKey, String modelName, CachedResponse response, OffsetDateTime notBefore) {
+    em.createNativeQuery("""
+            INSERT INTO jb2_llm_response_cache
+                (cache_key, model_name, actual_model_used, response, source_call_log_id, hit_count, created_date)
+            VALUES (?1::varchar, ?2::varchar, ?3::varchar, ?4::text, ?5, 0, NOW())
+            ON CONFLICT (cache_key) DO UPDATE
+            SET model_name         = EXCLUDED.model_name,
+                actual_model_used  = EXCLUDED.actual_model_used,
+                response           = EXCLUDED.response,
+                source_call_log_id = EXCLUDED.source_call_log_id,
+                hit_count          = 0,
+                created_date       = EXCLUDED.created_date,
+                last_hit_date      = NULL
+            WHERE jb2_llm_response_cache.created_date < ?6
+            """)
+        .setParameter(1, cacheKey)
+        .setParameter(2, modelName)
+        .setParameter(3, response.actualModelUsed())
+        .setParameter(4, response.response())
+        .setParameter(5, response.sourceCallLogId())
+        .setParameter(6, notBefore)
+        .executeUpdate();
+  }
+
+  /**
+   * Учитывает попадание в кэш
+   */
+  @Transactional
+  public void registerHit(String cacheKey) {
+    em.createNativeQuery("""
+            UPDATE jb2_llm_response_cache
+            SET hit_count     = hit_count + 1,
+                last_hit_date = NOW()
+            WHERE cache_key = ?1::varchar
+            """)
+        .setParameter(1, cacheKey)
+        .executeUpdate();
+  }
+
+  /**
+   * @param response         текст ответа LLM как он был получен
+   * @param actualModelUsed  модель, которая фактически ответила (по данным litellm)
+   * @param sourceCallLogId  ID вызова в jb2_llm_call_log, ответ которого сохранен
+   */
+  public record CachedResponse(String response, String actualModelUsed, Long sourceCallLogId) {
+  }
+
+  /**
+   * @param response    сохраненный ответ
+   * @param createdDate когда ответ сохранен в БД; от него отсчитывается TTL
+   */
+  public record StoredResponse(CachedResponse response, Instant createdDate) {
+  }
+}
@@ -0,0 +1,99 @@
+package ru.mindils.jb2.app.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хэши содержимого вакансий и анализов, по которым определяется, какие LLM-анализы устарели
+ */
+@Repository
+public class VacancyContentHashRepository {
+
+  @PersistenceContext
+  private EntityManager em;
+
+  /**
+   * Текущие хэши содержимого сохраненных вакансий.
+   * Вакансии, которых нет в БД, в результат не попадают; у еще не хэшированных значение null
+   */
+  public Map<String, String> findContentHashes(Collection<String> vacancyIds) {
+    if (vacancyIds.isEmpty()) {
+      return Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = em.createNativeQuery("""
+            SELECT id, content_hash
+            FROM jb2_vacancy
+            WHERE id = ANY(string_to_array(?1::varchar, ','))
+            """)
+        .setParameter(1, String.join(",", vacancyIds))
+        .getResultList();
+
+    Map<String, String> result = new HashMap<>();
+    for (Object[] row : rows) {
+      result.put((String) row[0], (String) row[1]);
+    }
+    return result;
+  }
+
+  /**
+   * Завершенные (DONE / SKIPPED) анализы, выполненные по другому содержимому, чем текущее у вакансии
+   *
+   * @return типы устаревших анализов по ID вакансии
+   */
+  public Map<String, Set<String>> findStaleAnalysisTypes(Collection<String> vacancyIds) {
+    if (vacancyIds.isEmpty()) {
+      return Map.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = em.createNativeQuery("""
+            SELECT a.vacancy_id, a.analyze_type
+            FROM jb2_vacancy_llm_analysis a
+            JOIN jb2_vacancy v ON v.id = a.vacancy_id
+            WHERE a.vacancy_id = ANY(string_to_array(?1::varchar, ','))
+              AND a.status IN ('DONE', 'SKIPPED')
+              AND a.content_hash IS DISTINCT FROM v.content_hash
+            """)
+        .setParameter(1, String.join(",", vacancyIds))
+        .getResultList();
+
+    Map<String, Set<String>> result = new HashMap<>();
+    for (Object[] row : rows) {
+      result.computeIfAbsent((String) row[0], id -> new HashSet<>()).add((String) row[1]);
+    }
+    return result;
+  }
+
+  /**
+   * Проставляет текущий хэш вакансии анализам, выполненным до появления хэшей.
+   * Вызывается при первом хэшировании вакансии, чтобы ранее выполненные анализы не считались устаревшими
+   */
+  @Transactional
+  public int adoptLegacyAnalyses(Collection<String> vacancyIds) {
+    if (vacancyIds.isEmpty()) {
+      return 0;
+    }
+
+    return em.createNativeQuery("""
+            UPDATE jb2_vacancy_llm_analysis a
+            SET content_hash = v.content_hash
+            FROM jb2_vacancy v
+            WHERE v.id = a.vacancy_id
+              AND a.vacancy_id = ANY(string_to_array(?1::varchar, ','))
+              AND a.content_hash IS NULL
+            """)
+        .setParameter(1, String.join(",", vacancyIds))
+        .executeUpdate();
+  }
+}
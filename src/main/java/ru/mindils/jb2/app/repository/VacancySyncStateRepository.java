@@ -0,0 +1,79 @@
+package ru.mindils.jb2.app.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Отметки инкрементальной синхронизации вакансий по фильтрам (jb2_vacancy_sync_state)
+ */
+@Repository
+public class VacancySyncStateRepository {
+
+  @PersistenceContext
+  private EntityManager em;
+
+  /**
+   * Момент начала последней успешной синхронизации фильтра или null, если ее еще не было
+   */
+  public OffsetDateTime findWatermark(String filterCode) {
+    @SuppressWarnings("unchecked")
+    List<Object> rows = em.createNativeQuery("""
+            SELECT watermark
+            FROM jb2_vacancy_sync_state
+            WHERE filter_code = ?1::varchar
+            """)
+        .setParameter(1, filterCode)
+        .getResultList();
+
+    if (rows.isEmpty() || rows.get(0) == null) {
+      return null;
+    }
+    Object value = rows.get(0);
+    if (value instanceof OffsetDateTime offsetDateTime) {
+      return offsetDateTime;
+    }
+    return ((Timestamp) value).toInstant().atOffset(ZoneOffset.UTC);
+  }
+
+  /**
+   * Запоминает окно начатой синхронизации (отметка при этом не меняется)
+   */
+  @Transactional
+  public void markStarted(String filterCode, OffsetDateTime dateFrom, OffsetDateTime startedAt) {
+    em.createNativeQuery("""
+            INSERT INTO jb2_vacancy_sync_state (filter_code, last_date_from, last_started_date)
+            VALUES (?1::varchar, ?2, ?3)
+            ON CONFLICT (filter_code) DO UPDATE
+            SET last_date_from    = EXCLUDED.last_date_from,
+                last_started_date = EXCLUDED.last_started_date
+            """)
+        .setParameter(1, filterCode)
+        .setParameter(2, dateFrom)
+        .setParameter(3, startedAt)
+        .executeUpdate();
+  }
+
+  /**
+   * Сдвигает отметку на начало успешно завершенной синхронизации (только вперед)
+   */
+  @Transactional
+  public void markCompleted(String filterCode, OffsetDateTime startedAt) {
+    em.createNativeQuery("""
+            INSERT INTO jb2_vacancy_sync_state (filter_code, watermark, last_completed_date)
+            VALUES (?1::varchar, ?2, NOW())
+            ON CONFLICT (filter_code) DO UPDATE
+            SET watermark           = GREATEST(jb2_vacancy_sync_state.watermark, EXCLUDED.watermark),
+                last_completed_date = EXCLUDED.last_completed_date
+            """)
+        .setParameter(1, filterCode)
+        .setParameter(2, startedAt)
+        .executeUpdate();
+  }
+}
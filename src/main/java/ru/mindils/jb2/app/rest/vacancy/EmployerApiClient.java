@@ -7,6 +7,8 @@ import ru.mindils.jb2.app.dto.EmployerDto;
 import ru.mindils.jb2.app.dto.VacancyDto;
 import ru.mindils.jb2.app.entity.Employer;
 import ru.mindils.jb2.app.entity.Vacancy;
+import ru.mindils.jb2.app.integration.http.HttpResult;
+import ru.mindils.jb2.app.integration.http.HttpValidators;
 import ru.mindils.jb2.app.integration.http.JsonHttpClient;
 import ru.mindils.jb2.app.mapper.EmployerMapper;
 import ru.mindils.jb2.app.mapper.VacancyMapper;
@@ -34,4 +36,12 @@ public class EmployerApiClient {
         EmployerDto dto = client.retrieve(URI.create(EMPLOYER_API_URL + "/" + id), EmployerDto.class).data();
         return dto;
     }
+
+    /**
+     * Условная загрузка работодателя: если он не изменился с момента получения validators, вернется 304 без тела
+     */
+    @SneakyThrows
+    public HttpResult<EmployerDto> getByIdIfModified(String id, HttpValidators validators) {
+        return client.retrieveIfModified(URI.create(EMPLOYER_API_URL + "/" + id), EmployerDto.class, validators);
+    }
 }
@@ -6,10 +6,17 @@ import org.springframework.stereotype.Service;
 import ru.mindils.jb2.app.dto.VacancyDto;
 import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
 import ru.mindils.jb2.app.entity.Vacancy;
+import ru.mindils.jb2.app.integration.http.HttpResult;
+import ru.mindils.jb2.app.integration.http.HttpValidators;
 import ru.mindils.jb2.app.integration.http.JsonHttpClient;
 import ru.mindils.jb2.app.mapper.VacancyMapper;
 
 import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +25,10 @@ import static java.util.stream.Collectors.joining;
 @Service
 public class VacancyApiClient {
   private static final String VACANCY_API_URL = "https://api.hh.ru/vacancies";
+  // Формат дат в параметрах поиска (date_from / date_to): 2026-10-18T10:00:00+0000
+  private static final DateTimeFormatter DATE_PARAM_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+  // Параметры поиска, которые задают окно дат публикации
+  public static final List<String> DATE_PARAMS = List.of("period", "date_from", "date_to");
 
   @Autowired
   JsonHttpClient client;
@@ -31,12 +42,36 @@ public class VacancyApiClient {
     return dto;
   }
 
+  /**
+   * Условная загрузка вакансии: если она не изменилась с момента получения validators, вернется 304 без тела
+   */
+  @SneakyThrows
+  public HttpResult<VacancyDto> getByIdIfModified(String id, HttpValidators validators) {
+    return client.retrieveIfModified(URI.create(VACANCY_API_URL + "/" + id), VacancyDto.class, validators);
+  }
+
   @SneakyThrows
   public VacancySearchResponseDto getAll(List<Map<String, String>> params) {
     VacancySearchResponseDto response = client.retrieve(buildURIWithParams(VACANCY_API_URL, params), VacancySearchResponseDto.class).data();
     return response;
   }
 
+  /**
+   * Значение параметра даты для поиска. Параметры подставляются в URL как есть,
+   * поэтому значение сразу кодируется ('+' в смещении иначе станет пробелом)
+   */
+  public static String formatDateParam(OffsetDateTime dateTime) {
+    String value = dateTime.withOffsetSameInstant(ZoneOffset.UTC).format(DATE_PARAM_FORMAT);
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Задает ли параметр поиска окно дат публикации (period, date_from, date_to)
+   */
+  public static boolean isDateParam(Map<String, String> param) {
+    return param.keySet().stream().anyMatch(DATE_PARAMS::contains);
+  }
+
   private URI buildURIWithParams(String uri, List<Map<String, String>> params) {
     return URI.create(uri
         + params.stream()
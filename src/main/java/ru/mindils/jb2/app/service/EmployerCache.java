@@ -0,0 +1,125 @@
+package ru.mindils.jb2.app.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш свежести работодателей: работодатель, обновленный не раньше чем TTL назад
+ * (jb2.hh.employer-cache-ttl), не загружается с hh.ru и не сохраняется повторно.
+ * Время обновления хранится в памяти, а после перезапуска берется из jb2_employer.last_modified_date.
+ * В памяти держится не больше jb2.hh.employer-cache-max-entries записей: сначала удаляются устаревшие,
+ * затем самые давно обновленные (вытесненный работодатель снова проверяется по БД)
+ */
+@Component
+public class EmployerCache {
+
+  private final Duration ttl;
+  private final int maxEntries;
+
+  // ID работодателя -> когда он последний раз загружался с hh.ru и сохранялся
+  private final Map<String, Instant> refreshedAt = new ConcurrentHashMap<>();
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  public EmployerCache(@Value("${jb2.hh.employer-cache-ttl:PT24H}") Duration ttl,
+                       @Value("${jb2.hh.employer-cache-max-entries:50000}") int maxEntries) {
+    this.ttl = ttl;
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Возвращает тех работодателей из списка, которых нужно загрузить заново (нет в БД или истек TTL).
+   * Работодатели, которых нет в памяти, проверяются по БД одним запросом
+   */
+  public Set<String> findStale(Collection<String> employerIds) {
+    Instant now = Instant.now();
+
+    Set<String> unknown = employerIds.stream()
+        .filter(id -> !refreshedAt.containsKey(id))
+        .collect(Collectors.toSet());
+    if (!unknown.isEmpty()) {
+      loadFromDatabase(unknown);
+    }
+
+    return employerIds.stream()
+        .filter(id -> !isFresh(id, now))
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Отмечает работодателей как только что обновленных
+   */
+  public void markRefreshed(Collection<String> employerIds) {
+    Instant now = Instant.now();
+    employerIds.forEach(id -> refreshedAt.put(id, now));
+    evict(now);
+  }
+
+  private boolean isFresh(String employerId, Instant now) {
+    Instant refreshed = refreshedAt.get(employerId);
+    return refreshed != null && refreshed.plus(ttl).isAfter(now);
+  }
+
+  private void loadFromDatabase(Set<String> employerIds) {
+    var sql = """
+        SELECT id, last_modified_date
+        FROM jb2_employer
+        WHERE id = ANY(string_to_array(?1::varchar, ','))
+          AND last_modified_date IS NOT NULL
+        """;
+
+    @SuppressWarnings("unchecked")
+    List<Object[]> rows = entityManager.createNativeQuery(sql)
+        .setParameter(1, String.join(",", employerIds))
+        .getResultList();
+
+    for (Object[] row : rows) {
+      refreshedAt.putIfAbsent((String) row[0], toInstant(row[1]));
+    }
+    evict(Instant.now());
+  }
+
+  private synchronized void evict(Instant now) {
+    if (refreshedAt.size() <= maxEntries) {
+      return;
+    }
+    refreshedAt.values().removeIf(refreshed -> !refreshed.plus(ttl).isAfter(now));
+
+    int excess = refreshedAt.size() - maxEntries;
+    if (excess > 0) {
+      refreshedAt.entrySet().stream()
+          .sorted(Map.Entry.comparingByValue())
+          .limit(excess)
+          .map(Map.Entry::getKey)
+          .toList()
+          .forEach(refreshedAt::remove);
+    }
+  }
+
+  private Instant toInstant(Object value) {
+    if (value instanceof OffsetDateTime offsetDateTime) {
+      return offsetDateTime.toInstant();
+    }
+    if (value instanceof Timestamp timestamp) {
+      return timestamp.toInstant();
+    }
+    if (value instanceof Instant instant) {
+      return instant;
+    }
+    throw new IllegalStateException("Unexpected last_modified_date type: " + value.getClass());
+  }
+}
@@ -0,0 +1,100 @@
+package ru.mindils.jb2.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+import ru.mindils.jb2.app.repository.GenericTaskQueueHistoryRepository;
+
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+/**
+ * Перенос завершенных задач из очереди в секционированную историю и удаление старых секций.
+ * В очереди остаются только активные задачи (NEW/PROCESSING/DEAD)
+ */
+@Service
+public class GenericTaskQueueHistoryService {
+
+  private static final Logger log = LoggerFactory.getLogger(GenericTaskQueueHistoryService.class);
+
+  private final GenericTaskQueueHistoryRepository historyRepository;
+  private final int archiveBatchSize;
+  private final int retentionMonths;
+
+  // Месяц, для которого секции уже созданы, чтобы не выполнять DDL на каждом запуске
+  private volatile YearMonth partitionsReadyFor;
+
+  public GenericTaskQueueHistoryService(GenericTaskQueueHistoryRepository historyRepository,
+                                        @Value("${jb2.queue-processor.history.archive-batch-size:1000}") int archiveBatchSize,
+                                        @Value("${jb2.queue-processor.history.retention-months:6}") int retentionMonths) {
+    this.historyRepository = historyRepository;
+    this.archiveBatchSize = archiveBatchSize;
+    this.retentionMonths = retentionMonths;
+  }
+
+  /**
+   * Переносит завершенные задачи (COMPLETED/FAILED) в историю пачками
+   */
+  @Scheduled(fixedDelayString = "${jb2.queue-processor.history.archive-interval-ms:60000}")
+  public void archiveFinishedTasks() {
+    ensurePartitions();
+
+    int total = 0;
+    int moved;
+    do {
+      moved = historyRepository.archiveFinishedTasks(archiveBatchSize);
+      total += moved;
+    } while (moved == archiveBatchSize);
+
+    if (total > 0) {
+      log.info("Moved {} finished tasks to queue history", total);
+    }
+  }
+
+  /**
+   * Удаляет секции истории старше срока хранения (jb2.queue-processor.history.retention-months)
+   */
+  @Scheduled(cron = "${jb2.queue-processor.history.retention-cron:0 30 3 * * *}")
+  public void dropExpiredPartitions() {
+    YearMonth oldestKept = currentMonth().minusMonths(retentionMonths);
+
+    for (YearMonth month : historyRepository.findPartitionMonths()) {
+      if (month.isBefore(oldestKept)) {
+        historyRepository.dropPartition(month);
+        log.info("Dropped queue history partition for {}", month);
+      }
+    }
+  }
+
+  /**
+   * Сколько задач указанного типа успешно завершено начиная с {@code since}
+   */
+  public long getCompletedSince(GenericTaskQueueType queueType, OffsetDateTime since) {
+    return historyRepository.countCompletedSince(queueType, since);
+  }
+
+  /**
+   * Создает секции текущего и следующего месяца, чтобы перенос не попадал в секцию по умолчанию
+   */
+  private void ensurePartitions() {
+    YearMonth current = currentMonth();
+    if (current.equals(partitionsReadyFor)) {
+      return;
+    }
+
+    for (YearMonth month : new YearMonth[]{current, current.plusMonths(1)}) {
+      if (historyRepository.createPartitionIfNotExists(month)) {
+        log.info("Created queue history partition for {}", month);
+      }
+    }
+    partitionsReadyFor = current;
+  }
+
+  private YearMonth currentMonth() {
+    return YearMonth.now(ZoneOffset.UTC);
+  }
+}
@@ -0,0 +1,172 @@
+package ru.mindils.jb2.app.service;
+
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+import ru.mindils.jb2.app.repository.GenericTaskQueueRepository;
+import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Слушает канал pg_notify очереди задач и будит общий планировщик очереди,
+ * как только в очередь добавлены новые задачи.
+ * Пока задач нет, поток заблокирован на чтении из сокета отдельного соединения
+ * и не тратит ни CPU, ни историю Temporal.
+ */
+@Component
+public class GenericTaskQueueListener {
+
+  private static final Logger log = LoggerFactory.getLogger(GenericTaskQueueListener.class);
+
+  // Сколько ждать уведомлений за один вызов, чтобы периодически проверять флаг остановки
+  private static final int POLL_TIMEOUT_MS = 10_000;
+  private static final long RECONNECT_DELAY_MS = 5_000;
+
+  private final DataSourceProperties dataSourceProperties;
+  private final VacancyQueueProcessorWorkflowService queueProcessorWorkflowService;
+  private final GenericTaskQueueRepository genericTaskQueueRepository;
+  private final boolean enabled;
+
+  private volatile boolean running;
+  private volatile Connection connection;
+  private Thread thread;
+
+  public GenericTaskQueueListener(DataSourceProperties dataSourceProperties,
+                                  VacancyQueueProcessorWorkflowService queueProcessorWorkflowService,
+                                  GenericTaskQueueRepository genericTaskQueueRepository,
+                                  @Value("${jb2.queue-processor.listen.enabled:true}") boolean enabled) {
+    this.dataSourceProperties = dataSourceProperties;
+    this.queueProcessorWorkflowService = queueProcessorWorkflowService;
+    this.genericTaskQueueRepository = genericTaskQueueRepository;
+    this.enabled = enabled;
+  }
+
+  @EventListener
+  public void onApplicationReady(ApplicationReadyEvent event) {
+    if (!enabled) {
+      log.info("Queue notification listener is disabled");
+      return;
+    }
+
+    running = true;
+    thread = new Thread(this::listen, "generic-task-queue-listener");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    closeConnection();
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  private void listen() {
+    while (running) {
+      try (Connection conn = DriverManager.getConnection(
+          dataSourceProperties.determineUrl(),
+          dataSourceProperties.determineUsername(),
+          dataSourceProperties.determinePassword())) {
+        connection = conn;
+
+        try (Statement statement = conn.createStatement()) {
+          statement.execute("LISTEN " + VacancyQueueProcessorConstants.NOTIFY_CHANNEL);
+        }
+        log.info("Listening for new queue tasks on channel {}", VacancyQueueProcessorConstants.NOTIFY_CHANNEL);
+
+        // Пока соединения не было, уведомления могли потеряться - будим планировщик, если есть NEW-задачи
+        wakeUpPendingQueues();
+
+        PGConnection pgConnection = conn.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MS);
+          if (notifications == null || notifications.length == 0) {
+            continue;
+          }
+
+          // Несколько INSERT подряд дают несколько уведомлений - будим планировщик один раз
+          Set<String> taskTypes = new LinkedHashSet<>();
+          for (PGNotification notification : notifications) {
+            taskTypes.add(notification.getParameter());
+          }
+          wakeUp(taskTypes);
+        }
+      } catch (Exception e) {
+        // Любая ошибка (в том числе не SQL) не должна останавливать поток - иначе уведомления пропадут до перезапуска
+        if (!running) {
+          return;
+        }
+        log.warn("Queue notification listener failed: {}, reconnecting in {} ms",
+            e.getMessage(), RECONNECT_DELAY_MS, e);
+        sleepBeforeReconnect();
+      } finally {
+        connection = null;
+      }
+    }
+  }
+
+  private void wakeUpPendingQueues() {
+    Set<String> taskTypes = new LinkedHashSet<>();
+    try {
+      for (GenericTaskQueueType queueType : GenericTaskQueueType.values()) {
+        if (genericTaskQueueRepository.getCountByTypeAndStatus(queueType, GenericTaskQueueStatus.NEW) > 0) {
+          taskTypes.add(queueType.getId());
+        }
+      }
+    } catch (Exception e) {
+      // БД может еще восстанавливаться: слушаем дальше, новые задачи разбудят планировщик через NOTIFY
+      log.error("Failed to check pending queue tasks after reconnect: {}", e.getMessage(), e);
+      return;
+    }
+    if (!taskTypes.isEmpty()) {
+      wakeUp(taskTypes);
+    }
+  }
+
+  private void wakeUp(Set<String> taskTypes) {
+    try {
+      queueProcessorWorkflowService.wakeUpScheduler();
+      log.debug("Woke up queue scheduler for new {} tasks", taskTypes);
+    } catch (Exception e) {
+      log.error("Failed to wake up queue scheduler for {} tasks: {}", taskTypes, e.getMessage(), e);
+    }
+  }
+
+  private void sleepBeforeReconnect() {
+    try {
+      Thread.sleep(RECONNECT_DELAY_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+
+  private void closeConnection() {
+    Connection conn = connection;
+    if (conn == null) {
+      return;
+    }
+    try {
+      conn.close();
+    } catch (SQLException e) {
+      log.debug("Error closing queue notification listener connection: {}", e.getMessage());
+    }
+  }
+}
@@ -3,25 +3,27 @@ package ru.mindils.jb2.app.service;
 import io.jmix.core.DataManager;
 import io.jmix.core.FetchPlans;
 import io.jmix.core.LoadContext;
-import io.jmix.core.SaveContext;
-import io.jmix.core.ValueLoadContext;
+import io.jmix.core.Sort;
 import io.jmix.core.entity.EntityValues;
-import io.jmix.core.entity.KeyValueEntity;
+import io.jmix.core.querycondition.Condition;
+import io.jmix.core.querycondition.LogicalCondition;
+import io.jmix.core.querycondition.PropertyCondition;
 import io.jmix.flowui.model.CollectionLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.mindils.jb2.app.dto.TaskQueueStats;
-import ru.mindils.jb2.app.entity.GenericTaskQueue;
 import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 import ru.mindils.jb2.app.entity.VVacancySearch;
 import ru.mindils.jb2.app.entity.Vacancy;
 import ru.mindils.jb2.app.repository.GenericTaskQueueRepository;
+import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
 
 import java.util.List;
-import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -34,6 +36,9 @@ import java.util.stream.Collectors;
 public class GenericTaskQueueService {
   private static final Logger log = LoggerFactory.getLogger(GenericTaskQueueService.class);
 
+  // Имя сущности вакансии в очереди, совпадает с тем, что пишут массовые INSERT в репозитории
+  private static final String VACANCY_ENTITY_NAME = "jb2_vacancy";
+
   private final GenericTaskQueueRepository genericTaskQueueRepository;
   private final FetchPlans fetchPlans;
   private final DataManager dataManager;
@@ -71,7 +76,7 @@ public class GenericTaskQueueService {
     log.info("Starting to enqueue vacancies from loader for task type: {}", taskType);
     LoadContext<Vacancy> baseCtx = loader.createLoadContext();
     baseCtx.setFetchPlan(fetchPlans.builder(Vacancy.class).add("id").build());
-    return enqueueVacancies(baseCtx, taskType, batchSize);
+    return enqueueByKeyset(baseCtx, vacancy -> (String) EntityValues.getId(vacancy), taskType, batchSize);
   }
 
   /**
@@ -93,189 +98,63 @@ public class GenericTaskQueueService {
     // Модифицируем только FetchPlan, сохраняя все условия запроса
     baseCtx.setFetchPlan(fetchPlans.builder(VVacancySearch.class).add("id").build());
 
-    // Логируем количество записей для обработки
-    LoadContext<VVacancySearch> countCtx = (LoadContext<VVacancySearch>) baseCtx.copy();
-    long totalCount = dataManager.getCount(countCtx);
-    log.info("Total VVacancySearch records matching filters: {}", totalCount);
-
-    return enqueueVacanciesFromView(baseCtx, taskType, batchSize);
+    return enqueueByKeyset(baseCtx, VVacancySearch::getId, taskType, batchSize);
   }
 
   /**
-   * Внутренний метод для добавления вакансий в очередь из Vacancy
+   * Внутренний метод для добавления в очередь всех записей, подходящих под условия loader.
+   * Страницы выбираются по ключу (id > последний id страницы, сортировка по id), а не через OFFSET,
+   * поэтому каждая страница стоит одинаково независимо от того, сколько уже пройдено.
+   * Каждая страница ставится в очередь одним INSERT ... ON CONFLICT DO NOTHING,
+   * уже стоящие в очереди задачи отсекает уникальный индекс активных задач.
    */
-  private int enqueueVacancies(LoadContext<Vacancy> baseCtx, GenericTaskQueueType taskType, int batchSize) {
+  private <E> int enqueueByKeyset(LoadContext<E> baseCtx, Function<E, String> idExtractor,
+                                  GenericTaskQueueType taskType, int batchSize) {
     int totalEnqueued = 0;
-    int first = 0;
-    final String entityName = "jb2_Vacancy";
+    int processed = 0;
+    String lastId = null;
+
+    // Условия из loader (фильтры) сохраняем и дополняем условием по ключу
+    Condition filterCondition = baseCtx.getQuery().getCondition();
 
     while (true) {
-      // Копируем контекст для текущей страницы
       @SuppressWarnings("unchecked")
-      LoadContext<Vacancy> pageCtx = (LoadContext<Vacancy>) baseCtx.copy();
-      pageCtx.getQuery().setFirstResult(first).setMaxResults(batchSize);
-
-      List<Vacancy> page = dataManager.loadList(pageCtx);
-      if (page.isEmpty()) {
-        break;
+      LoadContext<E> pageCtx = (LoadContext<E>) baseCtx.copy();
+      LoadContext.Query query = pageCtx.getQuery();
+
+      if (lastId != null) {
+        PropertyCondition afterLastId = PropertyCondition.greater("id", lastId);
+        query.setCondition(filterCondition == null
+            ? afterLastId
+            : LogicalCondition.and(filterCondition, afterLastId));
       }
+      query.setSort(Sort.by("id"));
+      query.setFirstResult(0).setMaxResults(batchSize);
 
-      log.debug("Processing batch starting from {}, size: {}", first, page.size());
-
-      // Собираем ID вакансий с явным приведением типа
-      List<String> vacancyIds = page.stream()
-          .map(v -> (String) EntityValues.getId(v))
+      List<String> vacancyIds = dataManager.loadList(pageCtx).stream()
+          .map(idExtractor)
           .collect(Collectors.toList());
-
-      // Находим уже существующие записи в очереди
-      Set<String> existingIds = findExistingTaskQueueIds(vacancyIds, taskType);
-
-      // Создаем новые записи
-      SaveContext saveCtx = new SaveContext();
-      for (Vacancy vacancy : page) {
-        String vacancyId = (String) EntityValues.getId(vacancy);
-
-        // Пропускаем, если уже в очереди
-        if (existingIds.contains(vacancyId)) {
-          log.debug("Vacancy {} already in queue for task type {}, skipping", vacancyId, taskType);
-          continue;
-        }
-
-        GenericTaskQueue task = dataManager.create(GenericTaskQueue.class);
-        task.setEntityName(entityName);
-        task.setEntityId(vacancyId);
-        task.setTaskType(taskType.getId());
-        task.setStatus(GenericTaskQueueStatus.NEW);
-        task.setPriority(1);
-        saveCtx.saving(task);
-      }
-
-      // Сохраняем батч
-      if (!saveCtx.getEntitiesToSave().isEmpty()) {
-        dataManager.save(saveCtx);
-        int batchEnqueued = saveCtx.getEntitiesToSave().size();
-        totalEnqueued += batchEnqueued;
-        log.debug("Enqueued {} vacancies in current batch", batchEnqueued);
-      }
-
-      first += page.size();
-    }
-
-    log.info("Finished enqueueing vacancies. Total enqueued: {}", totalEnqueued);
-    return totalEnqueued;
-  }
-
-  /**
-   * Внутренний метод для добавления вакансий в очередь из VVacancySearch
-   * Сохраняет все условия фильтрации из loader
-   */
-  private int enqueueVacanciesFromView(LoadContext<VVacancySearch> baseCtx, GenericTaskQueueType taskType, int batchSize) {
-    int totalEnqueued = 0;
-    int first = 0;
-    final String entityName = "jb2_Vacancy";
-
-    // Посчитаем общее количество для обработки
-    LoadContext<VVacancySearch> countCtx = (LoadContext<VVacancySearch>) baseCtx.copy();
-    long totalCount = dataManager.getCount(countCtx);
-
-    while (true) {
-      // Копируем контекст для текущей страницы с СОХРАНЕНИЕМ всех фильтров
-      @SuppressWarnings("unchecked")
-      LoadContext<VVacancySearch> pageCtx = (LoadContext<VVacancySearch>) baseCtx.copy();
-
-      // Применяем пагинацию ПОВЕРХ фильтров
-      pageCtx.getQuery().setFirstResult(first).setMaxResults(batchSize);
-
-      List<VVacancySearch> page = dataManager.loadList(pageCtx);
-      if (page.isEmpty()) {
+      if (vacancyIds.isEmpty()) {
         break;
       }
 
-      log.info("Processing VVacancySearch batch {}-{} of {} for task type: {}",
-          first + 1,
-          Math.min(first + page.size(), totalCount),
-          totalCount,
-          taskType);
+      int batchEnqueued = genericTaskQueueRepository.enqueueEntities(VACANCY_ENTITY_NAME, vacancyIds, taskType);
+      totalEnqueued += batchEnqueued;
+      processed += vacancyIds.size();
+      log.debug("Enqueued {} of {} vacancies in current batch (progress: {})",
+          batchEnqueued, vacancyIds.size(), processed);
 
-      // Собираем ID вакансий
-      List<String> vacancyIds = page.stream()
-          .map(VVacancySearch::getId)
-          .collect(Collectors.toList());
-
-      log.debug("Batch vacancy IDs: {}", vacancyIds);
-
-      // Находим уже существующие записи в очереди
-      Set<String> existingIds = findExistingTaskQueueIds(vacancyIds, taskType);
-
-      // Создаем новые записи
-      SaveContext saveCtx = new SaveContext();
-      for (VVacancySearch vVacancySearch : page) {
-        String vacancyId = vVacancySearch.getId();
-
-        // Пропускаем, если уже в очереди
-        if (existingIds.contains(vacancyId)) {
-          log.debug("Vacancy {} already in queue for task type {}, skipping", vacancyId, taskType);
-          continue;
-        }
-
-        GenericTaskQueue task = dataManager.create(GenericTaskQueue.class);
-        task.setEntityName(entityName);
-        task.setEntityId(vacancyId);
-        task.setTaskType(taskType.getId());
-        task.setStatus(GenericTaskQueueStatus.NEW);
-        task.setPriority(1);
-        saveCtx.saving(task);
-      }
-
-      // Сохраняем батч
-      if (!saveCtx.getEntitiesToSave().isEmpty()) {
-        dataManager.save(saveCtx);
-        int batchEnqueued = saveCtx.getEntitiesToSave().size();
-        totalEnqueued += batchEnqueued;
-        log.info("Enqueued {} vacancies from VVacancySearch in current batch (progress: {}/{})",
-            batchEnqueued, first + page.size(), totalCount);
+      if (vacancyIds.size() < batchSize) {
+        break;
       }
-
-      first += page.size();
+      lastId = vacancyIds.get(vacancyIds.size() - 1);
     }
 
-    log.info("Finished enqueueing vacancies from VVacancySearch. Total enqueued: {} out of {} filtered",
-        totalEnqueued, totalCount);
+    log.info("Finished enqueueing vacancies for task type {}. Total enqueued: {} out of {} filtered",
+        taskType, totalEnqueued, processed);
     return totalEnqueued;
   }
 
-  /**
-   * Найти существующие записи в очереди для указанных вакансий и типа задачи
-   */
-  private Set<String> findExistingTaskQueueIds(List<String> vacancyIds, GenericTaskQueueType taskType) {
-    if (vacancyIds.isEmpty()) {
-      return Set.of();
-    }
-
-    ValueLoadContext vlc = ValueLoadContext.create()
-        .setQuery(new ValueLoadContext.Query(
-            "select q.entityId as vacancyId " +
-                "from jb2_GenericTaskQueue q " +
-                "where q.taskType = :taskType " +
-                "and q.entityName = :entityName " +
-                "and q.entityId in :ids " +
-                "and q.status in :activeStatuses"))
-        .addProperty("vacancyId");
-
-    vlc.getQuery().setParameter("taskType", taskType.getId());
-    vlc.getQuery().setParameter("entityName", "jb2_Vacancy");
-    vlc.getQuery().setParameter("ids", vacancyIds);
-    vlc.getQuery().setParameter("activeStatuses", List.of(
-        GenericTaskQueueStatus.NEW.getId(),
-        GenericTaskQueueStatus.PROCESSING.getId()
-    ));
-
-    List<KeyValueEntity> rows = dataManager.loadValues(vlc);
-    return rows.stream()
-        .map(kv -> kv.<String>getValue("vacancyId"))
-        .collect(Collectors.toSet());
-  }
-
   // ============ ПОЛНЫЙ АНАЛИЗ ============
 
   /**
@@ -387,12 +266,14 @@ public class GenericTaskQueueService {
   }
 
   /**
-   * Перезапустить все неудачные задачи - меняет статус с FAILED на NEW
+   * Перезапустить все неудачные задачи - меняет статус с FAILED/DEAD на NEW.
+   * Повторные попытки размазываются по времени, см. {@link VacancyQueueProcessorConstants#RETRY_SPREAD}
    */
   @Transactional
   public int retryFailedTasks(GenericTaskQueueType queueType) {
     log.info("Retrying failed tasks for type {}", queueType);
-    int count = genericTaskQueueRepository.retryFailedTasks(queueType);
+    int count = genericTaskQueueRepository.retryFailedTasks(
+        queueType, VacancyQueueProcessorConstants.RETRY_SPREAD.toSeconds());
     log.info("Retried {} failed tasks", count);
     return count;
   }
@@ -409,11 +290,42 @@ public class GenericTaskQueueService {
     return retryFailedTasks(GenericTaskQueueType.LLM_FULL);
   }
 
+  /**
+   * Возвращает в очередь задачи, аренда которых истекла (исполнитель перестал ее продлевать).
+   * Живые задачи продлевают аренду каждые несколько секунд, поэтому сюда попадают только
+   * задачи упавших или остановленных обработчиков.
+   */
+  @Scheduled(fixedDelayString = "${jb2.queue-processor.lease-reaper-interval-ms:5000}")
+  public void releaseExpiredLeases() {
+    int count = genericTaskQueueRepository.releaseExpiredLeases();
+    if (count > 0) {
+      log.warn("Released {} tasks with expired lease back to NEW", count);
+    }
+  }
+
+  /**
+   * Сворачивает дельты счетчиков задач, которые триггер пишет на каждое изменение очереди.
+   * Счетчики читаются вместе с дельтами, поэтому интервал влияет только на размер таблицы дельт
+   */
+  @Scheduled(fixedDelayString = "${jb2.queue-processor.counter-fold-interval-ms:10000}")
+  public void foldCounterDeltas() {
+    int count = genericTaskQueueRepository.foldCounterDeltas();
+    log.debug("Folded task queue counter deltas into {} counters", count);
+  }
+
+  /**
+   * @deprecated задачи с истекшей арендой возвращаются автоматически, см. {@link #releaseExpiredLeases()}
+   */
+  @Deprecated
   @Transactional
   public int resetStuckLlmFirstTasks() {
     return resetStuckProcessingTasks(GenericTaskQueueType.LLM_FIRST, 30);
   }
 
+  /**
+   * @deprecated задачи с истекшей арендой возвращаются автоматически, см. {@link #releaseExpiredLeases()}
+   */
+  @Deprecated
   @Transactional
   public int resetStuckLlmFullTasks() {
     return resetStuckProcessingTasks(GenericTaskQueueType.LLM_FULL, 60); // Больше времени для full анализа
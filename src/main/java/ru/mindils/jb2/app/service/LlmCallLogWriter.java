@@ -0,0 +1,241 @@
+package ru.mindils.jb2.app.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.mindils.jb2.app.entity.LlmCallLog;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отложенная запись лога вызовов LLM (jb2_llm_call_log) в обход JPA.
+ * Строки копятся в ограниченном буфере (jb2.llm.call-log.buffer-capacity) и пишутся фоновым потоком пачками:
+ * как только набралось jb2.llm.call-log.batch-size строк или прошло jb2.llm.call-log.flush-interval
+ * с момента появления первой строки пачки. При переполнении буфера строка пишется сразу в вызывающем потоке.
+ * ID выдается при постановке в буфер из последовательности ID таблицы (блоками по id-allocation-size),
+ * поэтому его можно сразу сохранить в VacancyLlmAnalysis.llmCallLogId.
+ * При остановке приложения новые строки пишутся сразу, а буфер дописывается до конца
+ */
+@Component
+public class LlmCallLogWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(LlmCallLogWriter.class);
+
+  private static final String ALLOCATE_IDS_SQL = """
+      SELECT nextval(pg_get_serial_sequence('jb2_llm_call_log', 'id'))
+      FROM generate_series(1, ?)
+      """;
+
+  private static final String INSERT_SQL = """
+      INSERT INTO jb2_llm_call_log
+          (id, request_id, model_name, actual_model_used, prompt, prompt_length, temperature, max_tokens,
+           response, response_length, prompt_tokens, completion_tokens, total_tokens, cached_tokens, cost,
+           success, http_status_code, error_type, error_message, error_details,
+           duration_ms, retry_count, cache_hit, created_date)
+      VALUES (?, ?, ?, ?, ?, ?, ?, ?,
+              ?, ?, ?, ?, ?, ?, ?,
+              ?, ?, ?, ?, ?,
+              ?, ?, ?, ?)
+      ON CONFLICT (id) DO NOTHING
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final int batchSize;
+  private final Duration flushInterval;
+  private final Duration shutdownTimeout;
+  private final int idAllocationSize;
+
+  private final BlockingQueue<LlmCallLog> buffer;
+
+  // Выделенные, но еще не выданные ID
+  private final Deque<Long> allocatedIds = new ArrayDeque<>();
+
+  private volatile boolean running;
+  // Выставляется первым при остановке: после этого write() не ставит строки в буфер
+  private volatile boolean closed;
+  private Thread thread;
+
+  public LlmCallLogWriter(JdbcTemplate jdbcTemplate,
+                          @Value("${jb2.llm.call-log.buffer-capacity:1000}") int bufferCapacity,
+                          @Value("${jb2.llm.call-log.batch-size:50}") int batchSize,
+                          @Value("${jb2.llm.call-log.flush-interval:PT2S}") Duration flushInterval,
+                          @Value("${jb2.llm.call-log.shutdown-timeout:PT30S}") Duration shutdownTimeout,
+                          @Value("${jb2.llm.call-log.id-allocation-size:50}") int idAllocationSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferCapacity));
+    this.batchSize = Math.max(1, batchSize);
+    this.flushInterval = flushInterval;
+    this.shutdownTimeout = shutdownTimeout;
+    this.idAllocationSize = Math.max(1, idAllocationSize);
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    thread = new Thread(this::flushLoop, "llm-call-log-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    closed = true;
+    running = false;
+    if (thread != null) {
+      try {
+        thread.join(shutdownTimeout.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (thread.isAlive()) {
+        log.warn("LLM call log writer did not finish in {}, interrupting", shutdownTimeout);
+        thread.interrupt();
+      }
+    }
+
+    // Если фоновый поток не успел, дописываем остаток здесь
+    List<LlmCallLog> rest = new ArrayList<>();
+    buffer.drainTo(rest);
+    if (!rest.isEmpty()) {
+      writeBatch(rest);
+    }
+  }
+
+  /**
+   * Ставит запись в очередь на сохранение. ID записи выдается сразу
+   */
+  public void write(LlmCallLog callLog) {
+    if (callLog.getId() == null) {
+      callLog.setId(nextId());
+    }
+
+    if (closed || !buffer.offer(callLog)) {
+      log.debug("LLM call log buffer is full or stopped, writing call {} synchronously", callLog.getId());
+      writeBatch(List.of(callLog));
+      return;
+    }
+
+    // Остановка могла начаться после проверки closed и уже разобрать буфер.
+    // Если строку никто не забрал, пишем ее сами; если забрал - ее запишет остановка
+    if (closed && buffer.remove(callLog)) {
+      writeBatch(List.of(callLog));
+    }
+  }
+
+  private void flushLoop() {
+    List<LlmCallLog> batch = new ArrayList<>(batchSize);
+    while (running || !buffer.isEmpty()) {
+      try {
+        collectBatch(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      if (!batch.isEmpty()) {
+        writeBatch(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Ждет первую строку пачки, затем добирает строки до batchSize, но не дольше flushInterval
+   */
+  private void collectBatch(List<LlmCallLog> batch) throws InterruptedException {
+    LlmCallLog first = buffer.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return;
+    }
+    batch.add(first);
+
+    long deadline = System.nanoTime() + flushInterval.toNanos();
+    while (batch.size() < batchSize && running) {
+      buffer.drainTo(batch, batchSize - batch.size());
+      long waitNanos = deadline - System.nanoTime();
+      if (batch.size() >= batchSize || waitNanos <= 0) {
+        break;
+      }
+      LlmCallLog next = buffer.poll(waitNanos, TimeUnit.NANOSECONDS);
+      if (next == null) {
+        break;
+      }
+      batch.add(next);
+    }
+    // При остановке не ждем, а забираем все, что уже есть
+    buffer.drainTo(batch, batchSize - batch.size());
+  }
+
+  private void writeBatch(List<LlmCallLog> batch) {
+    try {
+      jdbcTemplate.batchUpdate(INSERT_SQL, batch, batchSize, this::bind);
+      log.debug("Wrote {} LLM call log rows", batch.size());
+    } catch (Exception e) {
+      log.warn("Failed to write {} LLM call log rows in batch: {}, retrying one by one", batch.size(), e.getMessage());
+      for (LlmCallLog callLog : batch) {
+        try {
+          jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, callLog));
+        } catch (Exception rowError) {
+          log.error("Failed to write LLM call log {}: {}", callLog.getId(), rowError.getMessage());
+        }
+      }
+    }
+  }
+
+  private synchronized Long nextId() {
+    if (allocatedIds.isEmpty()) {
+      allocatedIds.addAll(jdbcTemplate.queryForList(ALLOCATE_IDS_SQL, Long.class, idAllocationSize));
+    }
+    return allocatedIds.poll();
+  }
+
+  private void bind(PreparedStatement ps, LlmCallLog callLog) throws SQLException {
+    Object[] values = {
+        callLog.getId(),
+        callLog.getRequestId(),
+        callLog.getModelName(),
+        callLog.getActualModelUsed(),
+        callLog.getPrompt(),
+        callLog.getPromptLength(),
+        callLog.getTemperature(),
+        callLog.getMaxTokens(),
+        callLog.getResponse(),
+        callLog.getResponseLength(),
+        callLog.getPromptTokens(),
+        callLog.getCompletionTokens(),
+        callLog.getTotalTokens(),
+        callLog.getCachedTokens(),
+        callLog.getCost(),
+        callLog.getSuccess(),
+        callLog.getHttpStatusCode(),
+        callLog.getErrorType(),
+        callLog.getErrorMessage(),
+        callLog.getErrorDetails(),
+        callLog.getDurationMs(),
+        callLog.getRetryCount(),
+        callLog.getCacheHit(),
+        callLog.getCreatedDate()
+    };
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        ps.setNull(i + 1, Types.NULL);
+      } else {
+        ps.setObject(i + 1, values[i]);
+      }
+    }
+  }
+}
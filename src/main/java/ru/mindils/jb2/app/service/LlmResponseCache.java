@@ -0,0 +1,136 @@
+package ru.mindils.jb2.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.mindils.jb2.app.dto.LlmPrompt;
+import ru.mindils.jb2.app.repository.LlmResponseCacheRepository;
+import ru.mindils.jb2.app.repository.LlmResponseCacheRepository.CachedResponse;
+import ru.mindils.jb2.app.repository.LlmResponseCacheRepository.StoredResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Кэш ответов LLM по содержимому запроса: ключ - SHA-256 от (модель, temperature, maxTokens, system, user).
+ * Кэшируются только детерминированные вызовы (temperature не выше jb2.llm.response-cache-max-temperature).
+ * Последние ответы держатся в памяти (LRU, jb2.llm.response-cache-max-entries), остальные берутся из
+ * jb2_llm_response_cache. Ответ старше TTL (jb2.llm.response-cache-ttl) считается отсутствующим
+ */
+@Component
+public class LlmResponseCache {
+
+  private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+
+  // Разделитель частей ключа, который не встречается в параметрах модели
+  private static final char SEPARATOR = '\u0000';
+
+  private final LlmResponseCacheRepository repository;
+  private final boolean enabled;
+  private final double maxTemperature;
+  private final Duration ttl;
+
+  // Ключ -> ответ и момент его сохранения
+  private final Map<String, Entry> entries;
+
+  public LlmResponseCache(LlmResponseCacheRepository repository,
+                          @Value("${jb2.llm.response-cache-enabled:true}") boolean enabled,
+                          @Value("${jb2.llm.response-cache-max-temperature:0.0}") double maxTemperature,
+                          @Value("${jb2.llm.response-cache-ttl:P30D}") Duration ttl,
+                          @Value("${jb2.llm.response-cache-max-entries:1000}") int maxEntries) {
+    this.repository = repository;
+    this.enabled = enabled;
+    this.maxTemperature = maxTemperature;
+    this.ttl = ttl;
+    this.entries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    });
+  }
+
+  /**
+   * Ключ кэша или null, если вызов с такими параметрами не кэшируется
+   */
+  public String cacheKey(LlmPrompt prompt, String model, Double temperature, Integer maxTokens) {
+    if (!enabled || temperature == null || temperature > maxTemperature) {
+      return null;
+    }
+
+    String content = model + SEPARATOR + temperature + SEPARATOR + maxTokens
+        + SEPARATOR + (prompt.hasSystem() ? prompt.system() : "") + SEPARATOR + prompt.user();
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(md.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not available", e);
+    }
+  }
+
+  /**
+   * Сохраненный ответ по ключу. Ответы, которых нет в памяти, ищутся в БД
+   */
+  public Optional<CachedResponse> get(String cacheKey) {
+    Instant now = Instant.now();
+
+    Entry entry = entries.get(cacheKey);
+    if (entry != null && !isFresh(entry, now)) {
+      entries.remove(cacheKey);
+      entry = null;
+    }
+
+    if (entry == null) {
+      Optional<StoredResponse> stored = repository.find(cacheKey, notBefore(now));
+      if (stored.isEmpty()) {
+        return Optional.empty();
+      }
+      // TTL записи из БД отсчитывается от момента ее сохранения, а не загрузки в память
+      entry = new Entry(stored.get().response(), stored.get().createdDate());
+      entries.put(cacheKey, entry);
+    }
+
+    try {
+      repository.registerHit(cacheKey);
+    } catch (Exception e) {
+      log.warn("Failed to register LLM cache hit for key {}: {}", cacheKey, e.getMessage());
+    }
+    return Optional.of(entry.response());
+  }
+
+  /**
+   * Сохраняет ответ в памяти и в БД. Ошибка записи в БД не прерывает вызов LLM
+   */
+  public void put(String cacheKey, String model, CachedResponse response) {
+    Instant now = Instant.now();
+    entries.put(cacheKey, new Entry(response, now));
+
+    try {
+      repository.save(cacheKey, model, response, notBefore(now));
+    } catch (Exception e) {
+      log.warn("Failed to store LLM response in cache for key {}: {}", cacheKey, e.getMessage());
+    }
+  }
+
+  private boolean isFresh(Entry entry, Instant now) {
+    return entry.storedAt().plus(ttl).isAfter(now);
+  }
+
+  private OffsetDateTime notBefore(Instant now) {
+    return OffsetDateTime.ofInstant(now.minus(ttl), ZoneId.systemDefault());
+  }
+
+  private record Entry(CachedResponse response, Instant storedAt) {
+  }
+}
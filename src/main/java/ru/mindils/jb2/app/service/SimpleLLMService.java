@@ -1,13 +1,16 @@
 package ru.mindils.jb2.app.service;
 
-import io.jmix.core.UnconstrainedDataManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.metadata.ChatResponseMetadata;
 import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
@@ -18,8 +21,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import ru.mindils.jb2.app.dto.LlmAnalysisResponse;
+import ru.mindils.jb2.app.dto.LlmPrompt;
+import ru.mindils.jb2.app.repository.LlmResponseCacheRepository.CachedResponse;
 import ru.mindils.jb2.app.util.JsonExtractor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Service
@@ -27,37 +35,50 @@ public class SimpleLLMService {
   private static final Logger log = LoggerFactory.getLogger(SimpleLLMService.class);
 
   private final ObjectMapper objectMapper;
-  private final UnconstrainedDataManager dataManager;
+  private final LlmCallLogWriter callLogWriter;
   private final ChatClient chatClient;
+  private final LlmResponseCache responseCache;
   private final String defaultModel;
 
-  public SimpleLLMService(UnconstrainedDataManager dataManager,
+  public SimpleLLMService(LlmCallLogWriter callLogWriter,
                           ChatClient chatClient,
                           ObjectMapper objectMapper,
+                          LlmResponseCache responseCache,
                           @Value("${spring.ai.openai.chat.options.model:gpt-4}") String defaultModel) {
-    this.dataManager = dataManager;
+    this.callLogWriter = callLogWriter;
     this.chatClient = chatClient;
     this.objectMapper = objectMapper;
+    this.responseCache = responseCache;
     this.defaultModel = defaultModel;
   }
 
   /**
    * Главный метод для вызова LLM через litellm
    * При ошибке просто пробрасывает исключение - роутинг делает litellm
+   * Инструкции (system) и данные (user) отправляются отдельными сообщениями, чтобы провайдер кэшировал префикс
    */
-  public LlmAnalysisResponse callLLM(String prompt, OpenAiChatOptions options) {
+  public LlmAnalysisResponse callLLM(LlmPrompt prompt, OpenAiChatOptions options) {
     String requestId = UUID.randomUUID().toString();
     long startTime = System.currentTimeMillis();
 
     // Определяем модель для лога
-    String requestedModel = (options != null && options.getModel() != null) ?
-        options.getModel() : defaultModel;
+    String requestedModel = resolveModel(options);
 
     log.info("Starting LLM call with requestId: {} for model: {}", requestId, requestedModel);
 
     // Создаем лог начала вызова
     LlmCallLog callLog = createCallLog(requestId, requestedModel, prompt, options);
 
+    // Тот же запрос к той же модели уже выполнялся - отдаем сохраненный ответ
+    String cacheKey = responseCache.cacheKey(prompt, requestedModel,
+        callLog.getTemperature(), callLog.getMaxTokens());
+    if (cacheKey != null) {
+      Optional<CachedResponse> cached = responseCache.get(cacheKey);
+      if (cached.isPresent()) {
+        return respondFromCache(callLog, cached.get(), startTime);
+      }
+    }
+
     try {
       // Выполняем вызов и получаем полный ответ с метаданными
       ChatResponse chatResponse = executeCallWithMetadata(prompt, options);
@@ -73,7 +94,15 @@ public class SimpleLLMService {
           duration, callLog.getActualModelUsed());
 
       // Парсим JSON и создаем DTO
-      return parseResponseToDto(response, callLog.getId(), callLog.getActualModelUsed());
+      LlmAnalysisResponse result = parseResponseToDto(response, callLog.getId(), callLog.getActualModelUsed());
+
+      // Кэшируем только ответы с корректным JSON, чтобы повтор не возвращал тот же брак
+      if (cacheKey != null && result.hasValidJson()) {
+        responseCache.put(cacheKey, requestedModel,
+            new CachedResponse(response, callLog.getActualModelUsed(), callLog.getId()));
+      }
+
+      return result;
 
     } catch (Exception e) {
       long duration = System.currentTimeMillis() - startTime;
@@ -88,6 +117,13 @@ public class SimpleLLMService {
     }
   }
 
+  /**
+   * Вызов с промптом из одного пользовательского сообщения
+   */
+  public LlmAnalysisResponse callLLM(String prompt, OpenAiChatOptions options) {
+    return callLLM(LlmPrompt.ofUser(prompt), options);
+  }
+
   /**
    * Упрощенный метод без дополнительных опций
    */
@@ -95,6 +131,20 @@ public class SimpleLLMService {
     return callLLM(prompt, null);
   }
 
+  /**
+   * Ответ из кэша: вызов логируется как успешный с CACHE_HIT = true и нулевым расходом токенов
+   */
+  private LlmAnalysisResponse respondFromCache(LlmCallLog callLog, CachedResponse cached, long startTime) {
+    long duration = System.currentTimeMillis() - startTime;
+    callLog.completeFromCache(cached.response(), cached.actualModelUsed(), duration);
+    callLogWriter.write(callLog);
+
+    log.info("LLM response served from cache (source call {}) in {} ms",
+        cached.sourceCallLogId(), duration);
+
+    return parseResponseToDto(cached.response(), callLog.getId(), callLog.getActualModelUsed());
+  }
+
   /**
    * Парсит ответ LLM в DTO с JSON и метаинформацией
    */
@@ -131,14 +181,20 @@ public class SimpleLLMService {
     }
   }
 
+  /**
+   * Модель, которой будет выполнен вызов с указанными опциями: модель из опций или модель по умолчанию
+   */
+  public String resolveModel(OpenAiChatOptions options) {
+    return options != null && options.getModel() != null ? options.getModel() : defaultModel;
+  }
+
   /**
    * Выполнение вызова к LLM через litellm с получением метаданных
    */
-  private ChatResponse executeCallWithMetadata(String prompt, OpenAiChatOptions additionalOptions) {
+  private ChatResponse executeCallWithMetadata(LlmPrompt prompt, OpenAiChatOptions additionalOptions) {
     // Объединяем опции
     OpenAiChatOptions.Builder optionsBuilder = OpenAiChatOptions.builder()
-        .model(additionalOptions != null && additionalOptions.getModel() != null ?
-            additionalOptions.getModel() : defaultModel);
+        .model(resolveModel(additionalOptions));
 
     if (additionalOptions != null) {
       if (additionalOptions.getTemperature() != null) {
@@ -149,9 +205,16 @@ public class SimpleLLMService {
       }
     }
 
+    // Сообщения передаются готовыми объектами: текст промпта содержит JSON и не должен разбираться как шаблон
+    List<Message> messages = new ArrayList<>(2);
+    if (prompt.hasSystem()) {
+      messages.add(new SystemMessage(prompt.system()));
+    }
+    messages.add(new UserMessage(prompt.user()));
+
     try {
       ChatResponse response = chatClient.prompt()
-          .user(prompt)
+          .messages(messages)
           .options(optionsBuilder.build())
           .call()
           .chatResponse();
@@ -271,7 +334,7 @@ public class SimpleLLMService {
    * Создание записи лога для вызова
    */
   private LlmCallLog createCallLog(String requestId, String modelName,
-                                   String prompt, OpenAiChatOptions options) {
+                                   LlmPrompt prompt, OpenAiChatOptions options) {
     Double temperature = null;
     Integer maxTokens = null;
 
@@ -280,7 +343,7 @@ public class SimpleLLMService {
       maxTokens = options.getMaxTokens();
     }
 
-    return LlmCallLog.startCall(requestId, modelName, prompt, temperature, maxTokens);
+    return LlmCallLog.startCall(requestId, modelName, prompt.fullText(), temperature, maxTokens);
   }
 
   /**
@@ -310,16 +373,30 @@ public class SimpleLLMService {
         if (usage.getTotalTokens() != null) {
           callLog.setTotalTokens(usage.getTotalTokens().intValue());
         }
+        callLog.setCachedTokens(getCachedTokens(usage));
       }
 
-      log.debug("LLM metadata - model: {}, prompt tokens: {}, completion tokens: {}, total: {}",
+      log.debug("LLM metadata - model: {}, prompt tokens: {}, cached: {}, completion tokens: {}, total: {}",
           actualModel,
           usage != null ? usage.getPromptTokens() : null,
+          callLog.getCachedTokens(),
           usage != null ? usage.getCompletionTokens() : null,
           usage != null ? usage.getTotalTokens() : null);
     }
 
-    dataManager.save(callLog);
+    callLogWriter.write(callLog);
+  }
+
+  /**
+   * Токены промпта, взятые из кэша провайдера (usage.prompt_tokens_details.cached_tokens), или null,
+   * если litellm не передал эти данные
+   */
+  private Integer getCachedTokens(Usage usage) {
+    if (usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage
+        && openAiUsage.promptTokensDetails() != null) {
+      return openAiUsage.promptTokensDetails().cachedTokens();
+    }
+    return null;
   }
 
   /**
@@ -328,6 +405,6 @@ public class SimpleLLMService {
   private void logFailedCall(LlmCallLog callLog, Exception e,
                              Integer httpStatus, String errorType, long duration) {
     callLog.completeWithError(e, httpStatus, errorType, duration);
-    dataManager.save(callLog);
+    callLogWriter.write(callLog);
   }
 }
\ No newline at end of file
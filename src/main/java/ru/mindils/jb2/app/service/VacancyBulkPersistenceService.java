@@ -0,0 +1,266 @@
+package ru.mindils.jb2.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jmix.core.security.CurrentAuthentication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.mindils.jb2.app.dto.EmployerDto;
+import ru.mindils.jb2.app.dto.VacancyDto;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Массовое сохранение вакансий и работодателей с hh.ru в обход JPA.
+ * Строки пишутся пакетами JDBC (jb2.hh.upsert-batch-size) выражением INSERT ... ON CONFLICT DO UPDATE,
+ * jsonb-колонки передаются строками и приводятся в самом SQL, без merge и JsonNodeConverter.
+ * Выполняется в текущей транзакции (JdbcTemplate использует то же соединение, что и JPA)
+ */
+@Service
+public class VacancyBulkPersistenceService {
+
+  private static final Logger log = LoggerFactory.getLogger(VacancyBulkPersistenceService.class);
+
+  private static final String UPSERT_EMPLOYER_SQL = """
+      INSERT INTO jb2_employer
+          (id, name, trusted, accredited_it_employer, has_divisions, type, description,
+           site_url, alternate_url, vacancies_url, logo_urls, relations, area, industries,
+           branded_description, branding, insider_interviews, open_vacancies,
+           created_date, last_modified_date)
+      VALUES (?, ?, ?, ?, ?, ?, ?,
+              ?, ?, ?, ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb,
+              ?, ?::jsonb, ?::jsonb, ?,
+              NOW(), NOW())
+      ON CONFLICT (id) DO UPDATE
+      SET name                   = EXCLUDED.name,
+          trusted                = EXCLUDED.trusted,
+          accredited_it_employer = EXCLUDED.accredited_it_employer,
+          has_divisions          = EXCLUDED.has_divisions,
+          type                   = EXCLUDED.type,
+          description            = EXCLUDED.description,
+          site_url               = EXCLUDED.site_url,
+          alternate_url          = EXCLUDED.alternate_url,
+          vacancies_url          = EXCLUDED.vacancies_url,
+          logo_urls              = EXCLUDED.logo_urls,
+          relations              = EXCLUDED.relations,
+          area                   = EXCLUDED.area,
+          industries             = EXCLUDED.industries,
+          branded_description    = EXCLUDED.branded_description,
+          branding               = EXCLUDED.branding,
+          insider_interviews     = EXCLUDED.insider_interviews,
+          open_vacancies         = EXCLUDED.open_vacancies,
+          last_modified_date     = EXCLUDED.last_modified_date
+      """;
+
+  private static final String UPSERT_VACANCY_SQL = """
+      INSERT INTO jb2_vacancy
+          (id, name, description, branded_description, employer_id, content_hash,
+           billing_type, area, salary, address, experience, schedule, employment,
+           key_skills, professional_roles, working_time_modes, work_format,
+           premium, response_letter_required, allow_messages, has_test, archived, hidden,
+           accept_handicapped, accept_kids, accept_incomplete_resumes, quick_responses_allowed,
+           approved, internship, night_shifts, accept_temporary, show_logo_in_search,
+           closed_for_applicants, response_url, apply_alternate_url, alternate_url,
+           published_at, created_at, initial_created_at,
+           created_by, created_date, last_modified_by, last_modified_date)
+      VALUES (?, ?, ?, ?, ?, ?,
+              ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb,
+              ?::jsonb, ?::jsonb, ?::jsonb, ?::jsonb,
+              ?, ?, ?, ?, ?, ?,
+              ?, ?, ?, ?,
+              ?, ?, ?, ?, ?,
+              ?, ?, ?, ?,
+              ?, ?, ?,
+              ?, NOW(), ?, NOW())
+      ON CONFLICT (id) DO UPDATE
+      SET name                      = EXCLUDED.name,
+          description               = EXCLUDED.description,
+          branded_description       = EXCLUDED.branded_description,
+          employer_id               = EXCLUDED.employer_id,
+          content_hash              = EXCLUDED.content_hash,
+          billing_type              = EXCLUDED.billing_type,
+          area                      = EXCLUDED.area,
+          salary                    = EXCLUDED.salary,
+          address                   = EXCLUDED.address,
+          experience                = EXCLUDED.experience,
+          schedule                  = EXCLUDED.schedule,
+          employment                = EXCLUDED.employment,
+          key_skills                = EXCLUDED.key_skills,
+          professional_roles        = EXCLUDED.professional_roles,
+          working_time_modes        = EXCLUDED.working_time_modes,
+          work_format               = EXCLUDED.work_format,
+          premium                   = EXCLUDED.premium,
+          response_letter_required  = EXCLUDED.response_letter_required,
+          allow_messages            = EXCLUDED.allow_messages,
+          has_test                  = EXCLUDED.has_test,
+          archived                  = EXCLUDED.archived,
+          hidden                    = EXCLUDED.hidden,
+          accept_handicapped        = EXCLUDED.accept_handicapped,
+          accept_kids               = EXCLUDED.accept_kids,
+          accept_incomplete_resumes = EXCLUDED.accept_incomplete_resumes,
+          quick_responses_allowed   = EXCLUDED.quick_responses_allowed,
+          approved                  = EXCLUDED.approved,
+          internship                = EXCLUDED.internship,
+          night_shifts              = EXCLUDED.night_shifts,
+          accept_temporary          = EXCLUDED.accept_temporary,
+          show_logo_in_search       = EXCLUDED.show_logo_in_search,
+          closed_for_applicants     = EXCLUDED.closed_for_applicants,
+          response_url              = EXCLUDED.response_url,
+          apply_alternate_url       = EXCLUDED.apply_alternate_url,
+          alternate_url             = EXCLUDED.alternate_url,
+          published_at              = EXCLUDED.published_at,
+          created_at                = EXCLUDED.created_at,
+          initial_created_at        = EXCLUDED.initial_created_at,
+          last_modified_by          = EXCLUDED.last_modified_by,
+          last_modified_date        = EXCLUDED.last_modified_date
+      """;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ObjectMapper objectMapper;
+  private final CurrentAuthentication currentAuthentication;
+  private final int batchSize;
+
+  public VacancyBulkPersistenceService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                       CurrentAuthentication currentAuthentication,
+                                       @Value("${jb2.hh.upsert-batch-size:500}") int batchSize) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.objectMapper = objectMapper;
+    this.currentAuthentication = currentAuthentication;
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Вставляет или обновляет работодателей
+   *
+   * @return количество записанных строк
+   */
+  @Transactional
+  public int upsertEmployers(Collection<EmployerDto> employers) {
+    if (employers.isEmpty()) {
+      return 0;
+    }
+
+    jdbcTemplate.batchUpdate(UPSERT_EMPLOYER_SQL, employers, batchSize, (ps, dto) -> bind(ps,
+        dto.getId(),
+        dto.getName(),
+        dto.getTrusted(),
+        dto.getAccreditedItEmployer(),
+        dto.getHasDivisions(),
+        dto.getType(),
+        dto.getDescription(),
+        dto.getSiteUrl(),
+        dto.getAlternateUrl(),
+        dto.getVacanciesUrl(),
+        toJson(dto.getLogoUrls()),
+        toJson(dto.getRelations()),
+        toJson(dto.getArea()),
+        toJson(dto.getIndustries()),
+        dto.getBrandedDescription(),
+        toJson(dto.getBranding()),
+        toJson(dto.getInsiderInterviews()),
+        dto.getOpenVacancies()));
+
+    log.debug("Upserted {} employers", employers.size());
+    return employers.size();
+  }
+
+  /**
+   * Вставляет или обновляет вакансии. Работодатели вакансий уже должны быть в БД
+   *
+   * @param vacancies     вакансии
+   * @param contentHashes хэши содержимого по ID вакансии (см. VacancyContentHasher)
+   * @return количество записанных строк
+   */
+  @Transactional
+  public int upsertVacancies(Collection<VacancyDto> vacancies, Map<String, String> contentHashes) {
+    if (vacancies.isEmpty()) {
+      return 0;
+    }
+
+    String username = currentAuthentication.isSet()
+        ? currentAuthentication.getUser().getUsername()
+        : null;
+
+    jdbcTemplate.batchUpdate(UPSERT_VACANCY_SQL, vacancies, batchSize, (ps, dto) -> bind(ps,
+        dto.getId(),
+        dto.getName(),
+        dto.getDescription(),
+        dto.getBrandedDescription(),
+        dto.getEmployer() != null ? dto.getEmployer().getId() : null,
+        contentHashes.get(dto.getId()),
+        toJson(dto.getBillingType()),
+        toJson(dto.getArea()),
+        toJson(dto.getSalary()),
+        toJson(dto.getAddress()),
+        toJson(dto.getExperience()),
+        toJson(dto.getSchedule()),
+        toJson(dto.getEmployment()),
+        toJson(dto.getKeySkills()),
+        toJson(dto.getProfessionalRoles()),
+        toJson(dto.getWorkingTimeModes()),
+        toJson(dto.getWorkFormat()),
+        dto.getPremium(),
+        dto.getResponseLetterRequired(),
+        dto.getAllowMessages(),
+        dto.getHasTest(),
+        dto.getArchived(),
+        dto.getHidden(),
+        dto.getAcceptHandicapped(),
+        dto.getAcceptKids(),
+        dto.getAcceptIncompleteResumes(),
+        dto.getQuickResponsesAllowed(),
+        dto.getApproved(),
+        dto.getInternship(),
+        dto.getNightShifts(),
+        dto.getAcceptTemporary(),
+        dto.getShowLogoInSearch(),
+        dto.getClosedForApplicants(),
+        dto.getResponseUrl(),
+        dto.getApplyAlternateUrl(),
+        dto.getAlternateUrl(),
+        toLocal(dto.getPublishedAt()),
+        toLocal(dto.getCreatedAt()),
+        toLocal(dto.getInitialCreatedAt()),
+        username,
+        username));
+
+    log.debug("Upserted {} vacancies", vacancies.size());
+    return vacancies.size();
+  }
+
+  private void bind(PreparedStatement ps, Object... values) throws SQLException {
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        ps.setNull(i + 1, Types.NULL);
+      } else {
+        ps.setObject(i + 1, values[i]);
+      }
+    }
+  }
+
+  private String toJson(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return objectMapper.writeValueAsString(value);
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException("Could not convert value to JSONB", e);
+    }
+  }
+
+  // Как в VacancyMapper: время хранится локальным временем hh.ru
+  private LocalDateTime toLocal(OffsetDateTime value) {
+    return value != null ? value.toLocalDateTime() : null;
+  }
+}
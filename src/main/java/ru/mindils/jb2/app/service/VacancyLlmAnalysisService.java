@@ -6,18 +6,23 @@ import io.jmix.core.DataManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.mindils.jb2.app.dto.LlmAnalysisResponse;
+import ru.mindils.jb2.app.dto.LlmPrompt;
 import ru.mindils.jb2.app.entity.Vacancy;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysis;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisStatus;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
+import ru.mindils.jb2.app.service.analysis.prompt.CombinedPromptGenerator;
 import ru.mindils.jb2.app.service.analysis.prompt.PromptGenerator;
 import ru.mindils.jb2.app.util.UuidGenerator;
 
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -32,9 +37,13 @@ public class VacancyLlmAnalysisService {
   private final DataManager dataManager;
   private final ObjectMapper objectMapper;
   private final UuidGenerator uuidGenerator;
+  private final CombinedPromptGenerator combinedPromptGenerator;
+  private final Set<String> combinedAnalysisModels;
 
   public VacancyLlmAnalysisService(SimpleLLMService llmService,
-                                   List<PromptGenerator> promptGenerators, DataManager dataManager, ObjectMapper objectMapper, UuidGenerator uuidGenerator) {
+                                   List<PromptGenerator> promptGenerators, DataManager dataManager, ObjectMapper objectMapper, UuidGenerator uuidGenerator,
+                                   CombinedPromptGenerator combinedPromptGenerator,
+                                   @Value("${jb2.llm.combined-analysis-models:}") Set<String> combinedAnalysisModels) {
     this.llmService = llmService;
     this.promptGenerators = promptGenerators.stream()
         .collect(Collectors.toMap(
@@ -44,6 +53,8 @@ public class VacancyLlmAnalysisService {
     this.dataManager = dataManager;
     this.objectMapper = objectMapper;
     this.uuidGenerator = uuidGenerator;
+    this.combinedPromptGenerator = combinedPromptGenerator;
+    this.combinedAnalysisModels = Set.copyOf(combinedAnalysisModels);
   }
 
   /**
@@ -64,8 +75,8 @@ public class VacancyLlmAnalysisService {
       }
 
       // Генерируем промпт
-      String prompt = promptGenerator.generatePrompt(vacancy);
-      log.debug("Generated prompt for analysis type {}: {}", analysisType, prompt);
+      LlmPrompt prompt = promptGenerator.generatePrompt(vacancy);
+      log.debug("Generated prompt for analysis type {}: {}", analysisType, prompt.fullText());
 
       // Вызываем LLM и получаем DTO
       return llmService.callLLM(prompt, getOptionsForAnalysisType(analysisType));
@@ -85,6 +96,72 @@ public class VacancyLlmAnalysisService {
     return analyze(vacancy, analysisType);
   }
 
+  /**
+   * Задана ли хотя бы одна модель для комбинированного анализа (jb2.llm.combined-analysis-models).
+   * Подходит ли модель конкретного вызова, решает {@link #analyzeCombined}
+   */
+  public boolean isCombinedAnalysisEnabled() {
+    return !combinedAnalysisModels.isEmpty();
+  }
+
+  /**
+   * Комбинированный анализ: один вызов LLM для нескольких типов анализа.
+   * Данные вакансии передаются один раз, ответ разбивается на разделы по типам.
+   * Раздел, который отсутствует или не является непустым JSON-объектом, в результат не попадает -
+   * для таких типов вызывающий выполняет обычный анализ по отдельности.
+   * Если модель вызова не входит в jb2.llm.combined-analysis-models, LLM не вызывается и результат пуст
+   *
+   * @param vacancy вакансия для анализа
+   * @param types   типы анализа
+   * @return результаты прошедших проверку разделов; у всех один и тот же llmCallId
+   */
+  public Map<VacancyLlmAnalysisType, LlmAnalysisResponse> analyzeCombined(Vacancy vacancy,
+                                                                         List<VacancyLlmAnalysisType> types) {
+    log.info("Starting combined analysis for vacancy {} with types {}", vacancy.getId(), types);
+
+    // Ответ содержит все разделы, поэтому лимит - сумма лимитов типов
+    int maxTokens = types.stream()
+        .mapToInt(type -> getOptionsForAnalysisType(type).getMaxTokens())
+        .sum();
+    OpenAiChatOptions options = OpenAiChatOptions.builder()
+        .temperature(0.0)
+        .maxTokens(maxTokens)
+        .build();
+
+    Map<VacancyLlmAnalysisType, LlmAnalysisResponse> result = new EnumMap<>(VacancyLlmAnalysisType.class);
+    String model = llmService.resolveModel(options);
+    if (!combinedAnalysisModels.contains(model)) {
+      log.info("Model {} is not enabled for combined analysis, vacancy {} is analyzed per type",
+          model, vacancy.getId());
+      return result;
+    }
+
+    LlmPrompt prompt = combinedPromptGenerator.generatePrompt(vacancy, types);
+    log.debug("Generated combined prompt for vacancy {}: {}", vacancy.getId(), prompt.fullText());
+
+    LlmAnalysisResponse response = llmService.callLLM(prompt, options);
+    if (!response.hasValidJson()) {
+      log.warn("Combined analysis for vacancy {} returned invalid JSON (LLM call {}): {}",
+          vacancy.getId(), response.llmCallId(), response.jsonParseError());
+      return result;
+    }
+
+    for (VacancyLlmAnalysisType type : types) {
+      JsonNode section = response.jsonNode().get(type.getId());
+      if (section == null || !section.isObject() || section.isEmpty()) {
+        log.warn("Combined analysis for vacancy {} has no valid {} section (LLM call {})",
+            vacancy.getId(), type, response.llmCallId());
+        continue;
+      }
+      result.put(type, LlmAnalysisResponse.success(
+          section.toString(), section, response.llmCallId(), response.llmModel()));
+    }
+
+    log.info("Combined analysis for vacancy {} produced {} of {} sections, LLM call {}",
+        vacancy.getId(), result.size(), types.size(), response.llmCallId());
+    return result;
+  }
+
   /**
    * Сохранение результата анализа в базу данных из DTO
    * Использует детерминированный UUID, поэтому может обновлять существующие записи
@@ -135,6 +212,7 @@ public class VacancyLlmAnalysisService {
       analysis.setStatus(VacancyLlmAnalysisStatus.DONE);
       analysis.setLlmCallLogId(llmResponse.llmCallId());
       analysis.setLlmModel(llmResponse.llmModel());
+      analysis.setContentHash(vacancy.getContentHash());
 
       // Устанавливаем JSON данные и ID лога LLM
       if (llmResponse.hasValidJson()) {
@@ -212,6 +290,7 @@ public class VacancyLlmAnalysisService {
       // Устанавливаем переданный статус, остальные поля оставляем пустыми
       analysis.setStatus(status);
       analysis.setMessage(message);
+      analysis.setContentHash(vacancy.getContentHash());
 
       // Сохраняем в базу данных
       VacancyLlmAnalysis saved = dataManager.save(analysis);
@@ -233,7 +312,8 @@ public class VacancyLlmAnalysisService {
 
   /**
    * Проверяет, существует ли уже завершенный анализ для данной вакансии и типа
-   * Проверяет только наличие готового JSON - если его нет, значит была ошибка парсинга
+   * Проверяет только наличие готового JSON - если его нет, значит была ошибка парсинга.
+   * Анализ, выполненный по другому содержимому вакансии (хэш не совпадает), считается отсутствующим
    */
   public boolean hasExistingAnalysis(String vacancyId, VacancyLlmAnalysisType analysisType) {
     log.debug("Checking existing analysis for vacancy {} with type {}", vacancyId, analysisType);
@@ -250,7 +330,8 @@ public class VacancyLlmAnalysisService {
 
       boolean exists = existingAnalysis.isPresent() &&
           existingAnalysis.get().getStatus() == VacancyLlmAnalysisStatus.DONE &&
-          existingAnalysis.get().getAnalyzeData() != null;
+          existingAnalysis.get().getAnalyzeData() != null &&
+          isCurrentContent(vacancyId, existingAnalysis.get());
 
       log.debug("Existing analysis for vacancy {} type {}: {}", vacancyId, analysisType, exists);
       return exists;
@@ -314,6 +395,22 @@ public class VacancyLlmAnalysisService {
     }
   }
 
+  /**
+   * Анализ выполнен по текущему содержимому вакансии.
+   * Анализы и вакансии, сохраненные до появления хэшей (null), считаются актуальными
+   */
+  private boolean isCurrentContent(String vacancyId, VacancyLlmAnalysis analysis) {
+    if (analysis.getContentHash() == null) {
+      return true;
+    }
+    String vacancyHash = dataManager.loadValue(
+            "select v.contentHash from jb2_Vacancy v where v.id = :vacancyId", String.class)
+        .parameter("vacancyId", vacancyId)
+        .optional()
+        .orElse(null);
+    return vacancyHash == null || vacancyHash.equals(analysis.getContentHash());
+  }
+
   /**
    * Настройки LLM в зависимости от типа анализа
    * Лимиты токенов основаны на сложности промпта и ожидаемой длине JSON-ответа
@@ -1,70 +1,94 @@
 package ru.mindils.jb2.app.service;
 
+import io.temporal.client.BatchRequest;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
-import ru.mindils.jb2.app.temporal.workflow.VacancyQueueProcessorWorkflow;
+import ru.mindils.jb2.app.temporal.workflow.VacancyQueueSchedulerWorkflow;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 @Service
 public class VacancyQueueProcessorWorkflowService {
 
   private final WorkflowClient workflowClient;
   private final TemporalStatusService temporalStatusService;
+  private final Environment environment;
 
   public VacancyQueueProcessorWorkflowService(WorkflowClient workflowClient,
-                                              TemporalStatusService temporalStatusService) {
+                                              TemporalStatusService temporalStatusService,
+                                              Environment environment) {
     this.workflowClient = workflowClient;
     this.temporalStatusService = temporalStatusService;
+    this.environment = environment;
   }
 
   /**
-   * Запускает обработку очереди для указанного типа задач
+   * Запускает обработку очереди для указанного типа задач.
+   * Очередь разбирает только общий планировщик (отдельных обработчиков по типам больше нет),
+   * поэтому метод будит его: если он уже работает, то перепроверит очередь, иначе будет запущен
    */
   public void startQueueProcessing(GenericTaskQueueType queueType) {
     if (queueType == null) {
       throw new IllegalArgumentException("queueType cannot be null");
     }
 
-    String workflowId = VacancyQueueProcessorConstants.WORKFLOW_ID + "_" + queueType.getId();
+    wakeUpScheduler();
+  }
 
-    // Проверяем, не запущен ли уже такой workflow
-    if (temporalStatusService.isWorkflowRunning(workflowId)) {
-      throw new IllegalStateException("Queue processor workflow для типа " + queueType + " уже запущен");
+  /**
+   * Будит обработку очереди для указанного типа задач, см. {@link #wakeUpScheduler()}
+   */
+  public void wakeUpQueueProcessing(GenericTaskQueueType queueType) {
+    if (queueType == null) {
+      throw new IllegalArgumentException("queueType cannot be null");
     }
 
-    VacancyQueueProcessorWorkflow workflow = workflowClient.newWorkflowStub(
-        VacancyQueueProcessorWorkflow.class,
+    wakeUpScheduler();
+  }
+
+  /**
+   * Будит общий планировщик, который разбирает все типы задач одновременно с учетом весов
+   * и ограничений jb2.queue-processor.concurrency.* (signal-with-start, можно вызывать сколько угодно раз)
+   */
+  public void wakeUpScheduler() {
+    VacancyQueueSchedulerWorkflow workflow = workflowClient.newWorkflowStub(
+        VacancyQueueSchedulerWorkflow.class,
         WorkflowOptions.newBuilder()
             .setTaskQueue(VacancyQueueProcessorConstants.QUEUE)
-            .setWorkflowId(workflowId)
+            .setWorkflowId(VacancyQueueProcessorConstants.SCHEDULER_WORKFLOW_ID)
             .build()
     );
 
-    WorkflowClient.start(workflow::processQueue, queueType);
+    Map<GenericTaskQueueType, Integer> typeLimits = new EnumMap<>(GenericTaskQueueType.class);
+    for (GenericTaskQueueType queueType : GenericTaskQueueType.values()) {
+      typeLimits.put(queueType, getConcurrency(queueType));
+    }
+
+    BatchRequest request = workflowClient.newSignalWithStartRequest();
+    request.add(workflow::schedule, getSchedulerConcurrency(), typeLimits);
+    request.add(workflow::wakeUp);
+    workflowClient.signalWithStart(request);
   }
 
   /**
-   * Останавливает обработку очереди для указанного типа через сигнал
+   * Останавливает общий планировщик через сигнал
    * @return true если сигнал был отправлен, false если workflow не запущен
    */
-  public boolean stopQueueProcessing(GenericTaskQueueType queueType) {
+  public boolean stopScheduler() {
     try {
-      String workflowId = VacancyQueueProcessorConstants.WORKFLOW_ID + "_" + queueType.getId();
-
-      // Проверяем, запущен ли workflow
-      if (!temporalStatusService.isWorkflowRunning(workflowId)) {
+      if (!temporalStatusService.isWorkflowRunning(VacancyQueueProcessorConstants.SCHEDULER_WORKFLOW_ID)) {
         return false;
       }
 
-      // Получаем существующий workflow stub
-      VacancyQueueProcessorWorkflow workflow = workflowClient.newWorkflowStub(
-          VacancyQueueProcessorWorkflow.class,
-          workflowId
+      VacancyQueueSchedulerWorkflow workflow = workflowClient.newWorkflowStub(
+          VacancyQueueSchedulerWorkflow.class,
+          VacancyQueueProcessorConstants.SCHEDULER_WORKFLOW_ID
       );
-
-      // Отправляем сигнал остановки
       workflow.stop();
       return true;
     } catch (Exception e) {
@@ -72,6 +96,47 @@ public class VacancyQueueProcessorWorkflowService {
     }
   }
 
+  /**
+   * Сколько задач указанного типа обработчик выполняет одновременно
+   * (jb2.queue-processor.concurrency.&lt;TYPE&gt;)
+   */
+  public int getConcurrency(GenericTaskQueueType queueType) {
+    return environment.getProperty(
+        VacancyQueueProcessorConstants.CONCURRENCY_PROPERTY_PREFIX + queueType.getId(),
+        Integer.class,
+        VacancyQueueProcessorConstants.DEFAULT_CONCURRENCY);
+  }
+
+  /**
+   * Вес типа задач в общем планировщике (jb2.queue-processor.weight.&lt;TYPE&gt;)
+   */
+  public int getWeight(GenericTaskQueueType queueType) {
+    return environment.getProperty(
+        VacancyQueueProcessorConstants.WEIGHT_PROPERTY_PREFIX + queueType.getId(),
+        Integer.class,
+        VacancyQueueProcessorConstants.DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Сколько задач всех типов общий планировщик выполняет одновременно
+   * (jb2.queue-processor.scheduler.concurrency)
+   */
+  public int getSchedulerConcurrency() {
+    return environment.getProperty(
+        "jb2.queue-processor.scheduler.concurrency",
+        Integer.class,
+        VacancyQueueProcessorConstants.DEFAULT_SCHEDULER_CONCURRENCY);
+  }
+
+  /**
+   * Останавливает обработку очереди для указанного типа через сигнал.
+   * Все типы задач разбирает общий планировщик, поэтому останавливается он целиком
+   * @return true если сигнал был отправлен, false если планировщик не запущен
+   */
+  public boolean stopQueueProcessing(GenericTaskQueueType queueType) {
+    return stopScheduler();
+  }
+
   /**
    * Запускает обработку очереди для первичного анализа
    */
@@ -115,11 +180,17 @@ public class VacancyQueueProcessorWorkflowService {
   }
 
   /**
-   * Проверяет, запущен ли workflow обработки очереди для указанного типа
+   * Проверяет, идет ли обработка очереди для указанного типа (то есть запущен ли общий планировщик)
    */
   public boolean isQueueProcessorRunning(GenericTaskQueueType queueType) {
-    String workflowId = VacancyQueueProcessorConstants.WORKFLOW_ID + "_" + queueType.getId();
-    return temporalStatusService.isWorkflowRunning(workflowId);
+    return isSchedulerRunning();
+  }
+
+  /**
+   * Проверяет, запущен ли общий планировщик очереди
+   */
+  public boolean isSchedulerRunning() {
+    return temporalStatusService.isWorkflowRunning(VacancyQueueProcessorConstants.SCHEDULER_WORKFLOW_ID);
   }
 
   /**
@@ -0,0 +1,171 @@
+package ru.mindils.jb2.app.service;
+
+import io.jmix.core.security.SystemAuthenticator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
+import ru.mindils.jb2.app.dto.VacancySearchSlice;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
+import ru.mindils.jb2.app.rest.vacancy.VacancyApiClient;
+import ru.mindils.jb2.app.temporal.VacancySyncConstants;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Планировщик поиска вакансий. hh.ru отдает по одному запросу не больше jb2.hh.search-result-limit
+ * вакансий, остальные молча теряются. Если запрос находит больше, окно дат публикации
+ * рекурсивно делится пополам, пока каждая часть не уложится в ограничение
+ */
+@Service
+public class VacancySearchPlanner {
+
+  private static final Logger log = LoggerFactory.getLogger(VacancySearchPlanner.class);
+
+  // hh.ru ищет вакансии не старше 30 дней
+  private static final int MAX_PERIOD_DAYS = 30;
+
+  private final VacancySyncService vacancySyncService;
+  private final ExecutorService hhFetchExecutor;
+  private final SystemAuthenticator authenticator;
+  private final int resultLimit;
+  private final Duration minWindow;
+
+  public VacancySearchPlanner(VacancySyncService vacancySyncService,
+                              @Qualifier("hhFetchExecutor") ExecutorService hhFetchExecutor,
+                              SystemAuthenticator authenticator,
+                              @Value("${jb2.hh.search-result-limit:2000}") int resultLimit,
+                              @Value("${jb2.hh.min-search-window:PT10M}") Duration minWindow) {
+    this.vacancySyncService = vacancySyncService;
+    this.hhFetchExecutor = hhFetchExecutor;
+    this.authenticator = authenticator;
+    this.resultLimit = resultLimit;
+    this.minWindow = minWindow;
+  }
+
+  /**
+   * Разбивает поиск на части, каждая из которых целиком доступна постранично
+   *
+   * @param requestParams пользовательские параметры поиска (могут содержать period)
+   * @param syncWindow    окно инкрементальной синхронизации или null
+   * @return непустые части поиска
+   */
+  public List<VacancySearchSlice> plan(List<Map<String, String>> requestParams, VacancySyncWindow syncWindow) {
+    List<Map<String, String>> params = requestParams != null ? requestParams : List.of();
+    OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+
+    OffsetDateTime from;
+    OffsetDateTime to;
+    if (syncWindow != null) {
+      from = syncWindow.getDateFrom();
+      to = syncWindow.getStartedAt();
+    } else {
+      // Без окна сначала пробуем запрос как есть - если он помещается, делить нечего
+      VacancySearchResponseDto probe = vacancySyncService.searchVacancies(0, params);
+      int found = foundOf(probe);
+      if (fits(found)) {
+        return found > 0 ? List.of(new VacancySearchSlice(params, probe)) : List.of();
+      }
+      from = now.minusDays(periodDays(params));
+      to = now;
+    }
+
+    // Окно дат задается параметрами date_from/date_to, поэтому period и даты из запроса не передаются
+    // (из параметров фильтра в БД их при этом убирает VacancySyncService)
+    List<Map<String, String>> baseParams = params.stream()
+        .filter(param -> !VacancyApiClient.isDateParam(param))
+        .toList();
+
+    List<VacancySearchSlice> slices = new ArrayList<>();
+    List<OffsetDateTime[]> pending = List.of(new OffsetDateTime[]{from, to});
+    int probes = 0;
+
+    // Обходим окна по уровням: все окна уровня проверяются параллельно в пределах квоты hh.ru
+    while (!pending.isEmpty()) {
+      Map<OffsetDateTime[], CompletableFuture<VacancySearchResponseDto>> futures = new LinkedHashMap<>();
+      for (OffsetDateTime[] window : pending) {
+        List<Map<String, String>> sliceParams = withWindow(baseParams, window[0], window[1]);
+        // Параметры фильтра загружаются из БД, поэтому в потоке пула нужен системный контекст
+        futures.put(window, CompletableFuture.supplyAsync(
+            () -> authenticator.withSystem(() -> vacancySyncService.searchVacancies(0, sliceParams)),
+            hhFetchExecutor));
+      }
+      probes += futures.size();
+
+      List<OffsetDateTime[]> next = new ArrayList<>();
+      for (Map.Entry<OffsetDateTime[], CompletableFuture<VacancySearchResponseDto>> entry : futures.entrySet()) {
+        OffsetDateTime[] window = entry.getKey();
+        VacancySearchResponseDto probe = entry.getValue().join();
+        int found = foundOf(probe);
+
+        if (fits(found) || !canSplit(window)) {
+          if (!fits(found)) {
+            log.warn("Search window {} - {} still finds {} vacancies (limit {}), some of them will be missed",
+                window[0], window[1], found, resultLimit);
+          }
+          if (found > 0) {
+            // Проба - это и есть первая страница части, повторно ее не запрашиваем
+            slices.add(new VacancySearchSlice(withWindow(baseParams, window[0], window[1]), probe));
+          }
+        } else {
+          OffsetDateTime middle = window[0].plusSeconds(Duration.between(window[0], window[1]).toSeconds() / 2);
+          next.add(new OffsetDateTime[]{window[0], middle});
+          next.add(new OffsetDateTime[]{middle, window[1]});
+        }
+      }
+      pending = next;
+    }
+
+    log.info("Search planned into {} slices ({} vacancies) with {} probe requests",
+        slices.size(), slices.stream().mapToInt(VacancySearchSlice::getFound).sum(), probes);
+    return slices;
+  }
+
+  private boolean fits(int found) {
+    return found <= resultLimit;
+  }
+
+  private int foundOf(VacancySearchResponseDto response) {
+    return response.getFound() != null ? response.getFound() : 0;
+  }
+
+  private boolean canSplit(OffsetDateTime[] window) {
+    return Duration.between(window[0], window[1]).compareTo(minWindow.multipliedBy(2)) >= 0;
+  }
+
+  private int periodDays(List<Map<String, String>> params) {
+    // period может быть задан и в запросе, и в фильтре в БД (запрос важнее)
+    List<Map<String, String>> allParams = new ArrayList<>(params);
+    allParams.addAll(vacancySyncService.getFilterRequestParams(VacancySyncConstants.DEFAULT_FILTER_CODE, true));
+    for (Map<String, String> param : allParams) {
+      String period = param.get("period");
+      if (period != null) {
+        try {
+          return Math.min(Integer.parseInt(period), MAX_PERIOD_DAYS);
+        } catch (NumberFormatException e) {
+          log.warn("Invalid period parameter: {}", period);
+        }
+      }
+    }
+    return MAX_PERIOD_DAYS;
+  }
+
+  private List<Map<String, String>> withWindow(List<Map<String, String>> baseParams,
+                                               OffsetDateTime from, OffsetDateTime to) {
+    List<Map<String, String>> params = new ArrayList<>(baseParams);
+    params.add(Map.of("date_from", VacancyApiClient.formatDateParam(from)));
+    params.add(Map.of("date_to", VacancyApiClient.formatDateParam(to)));
+    return params;
+  }
+}
@@ -5,29 +5,57 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.DigestUtils;
 import ru.mindils.jb2.app.dto.EmployerDto;
 import ru.mindils.jb2.app.dto.VacancyDto;
 import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
 import ru.mindils.jb2.app.entity.Employer;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 import ru.mindils.jb2.app.entity.Vacancy;
 import ru.mindils.jb2.app.entity.VacancyFilterParams;
+import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
 import ru.mindils.jb2.app.integration.http.ExternalServiceException;
+import ru.mindils.jb2.app.integration.http.HttpResult;
+import ru.mindils.jb2.app.integration.http.HttpValidators;
 import ru.mindils.jb2.app.mapper.EmployerMapper;
 import ru.mindils.jb2.app.mapper.VacancyMapper;
+import ru.mindils.jb2.app.repository.GenericTaskQueueRepository;
+import ru.mindils.jb2.app.repository.HhResourceValidatorRepository;
+import ru.mindils.jb2.app.repository.VacancyContentHashRepository;
 import ru.mindils.jb2.app.rest.vacancy.EmployerApiClient;
 import ru.mindils.jb2.app.rest.vacancy.VacancyApiClient;
+import ru.mindils.jb2.app.temporal.VacancySyncConstants;
+import ru.mindils.jb2.app.util.VacancyContentHasher;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Service
 public class VacancySyncService {
   private static final Logger log = LoggerFactory.getLogger(VacancySyncService.class);
 
+  // Имя сущности вакансии в очереди задач
+  private static final String VACANCY_ENTITY_NAME = "jb2_vacancy";
+
   @PersistenceContext
   private EntityManager entityManager;
 
@@ -36,16 +64,44 @@ public class VacancySyncService {
   private final VacancyMapper vacancyMapper;
   private final EmployerApiClient employerApiClient;
   private final EmployerMapper employerMapper;
-  private final String DEFAULT_FILTER = "DEFAULT";
+  private final ExecutorService hhFetchExecutor;
+  private final EmployerCache employerCache;
+  private final HhResourceValidatorRepository validatorRepository;
+  private final VacancyContentHasher contentHasher;
+  private final VacancyContentHashRepository contentHashRepository;
+  private final GenericTaskQueueRepository taskQueueRepository;
+  private final VacancyBulkPersistenceService bulkPersistenceService;
+
+  /**
+   * Детальная информация о вакансии, загруженная с hh.ru, и валидаторы HTTP-кэша ответов.
+   * employer равен null, если работодатель свежий или не изменился и сохранять его не нужно
+   */
+  public record VacancyDetails(VacancyDto vacancy, HttpValidators vacancyValidators,
+                               String employerId, EmployerDto employer, HttpValidators employerValidators) {
+  }
 
   public VacancySyncService(VacancyApiClient vacancyApiClient, DataManager dataManager,
                             VacancyMapper vacancyMapper, EmployerApiClient employerApiClient,
-                            EmployerMapper employerMapper) {
+                            EmployerMapper employerMapper,
+                            @Qualifier("hhFetchExecutor") ExecutorService hhFetchExecutor,
+                            EmployerCache employerCache,
+                            HhResourceValidatorRepository validatorRepository,
+                            VacancyContentHasher contentHasher,
+                            VacancyContentHashRepository contentHashRepository,
+                            GenericTaskQueueRepository taskQueueRepository,
+                            VacancyBulkPersistenceService bulkPersistenceService) {
     this.vacancyApiClient = vacancyApiClient;
     this.dataManager = dataManager;
     this.vacancyMapper = vacancyMapper;
     this.employerApiClient = employerApiClient;
     this.employerMapper = employerMapper;
+    this.hhFetchExecutor = hhFetchExecutor;
+    this.employerCache = employerCache;
+    this.validatorRepository = validatorRepository;
+    this.contentHasher = contentHasher;
+    this.contentHashRepository = contentHashRepository;
+    this.taskQueueRepository = taskQueueRepository;
+    this.bulkPersistenceService = bulkPersistenceService;
   }
 
   /**
@@ -66,12 +122,15 @@ public class VacancySyncService {
   public VacancySearchResponseDto searchVacancies(int page, List<Map<String, String>> customRequestParams) {
     log.info("Searching vacancies on page: {} with custom params: {}", page, customRequestParams);
 
-    // Всегда загружаем базовые параметры из БД
-    List<VacancyFilterParams> filterParams = getFilterParams();
+    // Всегда загружаем базовые параметры из БД. Если окно дат задано явно (часть поиска),
+    // period/date_from/date_to фильтра ему противоречат и не передаются
+    boolean windowed = customRequestParams != null
+        && customRequestParams.stream().anyMatch(VacancyApiClient::isDateParam);
+    List<Map<String, String>> filterParams =
+        getFilterRequestParams(VacancySyncConstants.DEFAULT_FILTER_CODE, !windowed);
 
     // Строим финальный список параметров, объединяя все источники
-    Stream<Map<String, String>> baseParamsStream = filterParams.stream()
-        .map(param -> Map.of(param.getParamName(), param.getParamValue()));
+    Stream<Map<String, String>> baseParamsStream = filterParams.stream();
 
     Stream<Map<String, String>> customParamsStream = customRequestParams != null && !customRequestParams.isEmpty()
         ? customRequestParams.stream()
@@ -102,50 +161,248 @@ public class VacancySyncService {
 
   /**
    * Сохранение детальной информации о вакансии с работодателем
-   * Обрабатывает случай когда вакансия удалена (404) - помечает её как архивную
+   * Обрабатывает случай когда вакансия удалена (404) - помечает её как архивную.
+   * Работодатель загружается и сохраняется только если истек его TTL в кэше.
+   * Вакансия, не изменившаяся с прошлого сохранения (304), не разбирается и не сохраняется
    *
    * @param vacancyId ID вакансии
    */
   @Transactional
   public void saveVacancyWithDetails(String vacancyId) {
     log.info("Saving vacancy with details: {}", vacancyId);
+    saveVacancyDetails(fetchVacancyDetails(List.of(vacancyId)));
+  }
 
-    try {
-      // Получаем детальную информацию о вакансии
-      VacancyDto vacancyDto = vacancyApiClient.getById(vacancyId);
-      log.debug("Retrieved vacancy details for: {}", vacancyId);
+  /**
+   * Параллельно загружает детали вакансий и их работодателей с hh.ru.
+   * Частота запросов ограничена квотой (jb2.hh.requests-per-second), а не количеством вакансий.
+   * Каждый работодатель загружается не больше одного раза и только если истек его TTL (см. {@link EmployerCache}).
+   * Запросы условные (ETag / Last-Modified): не изменившиеся с прошлого сохранения вакансии
+   * не разбираются и в результат не попадают, а не изменившиеся работодатели не сохраняются повторно.
+   * Удаленные вакансии (404) помечаются как архивные, остальные ошибки пропускают вакансию;
+   * если не удалось загрузить ни одну вакансию, выбрасывается исключение, чтобы повторить загрузку целиком
+   *
+   * @param vacancyIds ID вакансий
+   * @return детали изменившихся вакансий в исходном порядке
+   */
+  public List<VacancyDetails> fetchVacancyDetails(List<String> vacancyIds) {
+    Map<String, HttpValidators> vacancyValidators =
+        validatorRepository.findValidators(HhResourceValidatorRepository.VACANCY, vacancyIds);
 
-      // Получаем информацию о работодателе
-      String employerId = vacancyDto.getEmployer().getId();
-      EmployerDto employerDto = employerApiClient.getById(employerId);
-      log.debug("Retrieved employer details for: {}", employerId);
+    Map<String, CompletableFuture<HttpResult<VacancyDto>>> vacancyFutures = new LinkedHashMap<>();
+    for (String vacancyId : vacancyIds) {
+      HttpValidators validators = vacancyValidators.get(vacancyId);
+      vacancyFutures.put(vacancyId, CompletableFuture.supplyAsync(
+          () -> vacancyApiClient.getByIdIfModified(vacancyId, validators), hhFetchExecutor));
+    }
 
-      // Преобразуем DTO в сущности
-      Vacancy vacancy = vacancyMapper.toEntity(vacancyDto);
-      Employer employer = employerMapper.toEntity(employerDto);
+    List<HttpResult<VacancyDto>> vacancies = new ArrayList<>(vacancyIds.size());
+    int archivedCount = 0;
+    int unchangedCount = 0;
+    RuntimeException lastError = null;
 
-      // Сохраняем работодателя (merge для обновления если уже существует)
-      Employer mergedEmployer = entityManager.merge(employer);
-      log.debug("Saved/updated employer: {}", employerId);
+    for (Map.Entry<String, CompletableFuture<HttpResult<VacancyDto>>> entry : vacancyFutures.entrySet()) {
+      String vacancyId = entry.getKey();
+      try {
+        HttpResult<VacancyDto> response = entry.getValue().join();
+        if (response.notModified()) {
+          log.debug("Vacancy {} not modified since last sync, skipping", vacancyId);
+          unchangedCount++;
+          continue;
+        }
+        vacancies.add(response);
+        log.debug("Retrieved vacancy details for: {}", vacancyId);
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof ExternalServiceException && cause.getMessage() != null
+            && cause.getMessage().contains("404")) {
+          log.warn("Vacancy {} not found on hh.ru (404), marking as archived", vacancyId);
+          markVacancyAsArchived(vacancyId);
+          archivedCount++;
+        } else {
+          log.error("Error fetching vacancy {}: {}", vacancyId, cause.getMessage());
+          lastError = new RuntimeException("Failed to fetch vacancy " + vacancyId + ": " + cause.getMessage(), cause);
+        }
+      }
+    }
 
-      // Устанавливаем связь и сохраняем вакансию
-      vacancy.setEmployer(mergedEmployer);
-      entityManager.merge(vacancy);
-      log.info("Successfully saved vacancy: {} with employer: {}", vacancyId, employerId);
-
-    } catch (ExternalServiceException e) {
-      // Проверяем, это ли 404 ошибка
-      if (e.getMessage() != null && e.getMessage().contains("404")) {
-        log.warn("Vacancy {} not found on hh.ru (404), marking as archived", vacancyId);
-        markVacancyAsArchived(vacancyId);
-      } else {
-        log.error("External service error while saving vacancy {}: {}", vacancyId, e.getMessage());
-        throw new RuntimeException("Failed to save vacancy " + vacancyId + ": " + e.getMessage(), e);
+    // Загружаем только устаревших работодателей, каждого один раз
+    Set<String> employerIds = new LinkedHashSet<>();
+    for (HttpResult<VacancyDto> vacancy : vacancies) {
+      String employerId = employerIdOf(vacancy.data());
+      if (employerId != null) {
+        employerIds.add(employerId);
       }
-    } catch (Exception e) {
-      log.error("Error saving vacancy {}: {}", vacancyId, e.getMessage(), e);
-      throw new RuntimeException("Failed to save vacancy " + vacancyId, e);
     }
+    Set<String> staleEmployerIds = employerIds.isEmpty() ? Set.of() : employerCache.findStale(employerIds);
+    Map<String, HttpValidators> employerValidators =
+        validatorRepository.findValidators(HhResourceValidatorRepository.EMPLOYER, staleEmployerIds);
+
+    Map<String, CompletableFuture<HttpResult<EmployerDto>>> employerFutures = new LinkedHashMap<>();
+    for (String employerId : staleEmployerIds) {
+      HttpValidators validators = employerValidators.get(employerId);
+      employerFutures.put(employerId, CompletableFuture.supplyAsync(
+          () -> employerApiClient.getByIdIfModified(employerId, validators), hhFetchExecutor));
+    }
+
+    Map<String, HttpResult<EmployerDto>> employers = new HashMap<>();
+    Set<String> unchangedEmployerIds = new HashSet<>();
+    Set<String> failedEmployerIds = new HashSet<>();
+    for (Map.Entry<String, CompletableFuture<HttpResult<EmployerDto>>> entry : employerFutures.entrySet()) {
+      try {
+        HttpResult<EmployerDto> response = entry.getValue().join();
+        if (response.notModified()) {
+          unchangedEmployerIds.add(entry.getKey());
+        } else {
+          employers.put(entry.getKey(), response);
+          log.debug("Retrieved employer details for: {}", entry.getKey());
+        }
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        log.error("Error fetching employer {}: {}", entry.getKey(), cause.getMessage());
+        failedEmployerIds.add(entry.getKey());
+        lastError = new RuntimeException("Failed to fetch employer " + entry.getKey() + ": " + cause.getMessage(), cause);
+      }
+    }
+    // Валидаторы сохраняются вместе с работодателем, значит не изменившийся работодатель уже есть в БД
+    if (!unchangedEmployerIds.isEmpty()) {
+      employerCache.markRefreshed(unchangedEmployerIds);
+    }
+
+    List<VacancyDetails> result = new ArrayList<>(vacancies.size());
+    for (HttpResult<VacancyDto> vacancy : vacancies) {
+      String employerId = employerIdOf(vacancy.data());
+      if (employerId != null && failedEmployerIds.contains(employerId)) {
+        continue;
+      }
+      HttpResult<EmployerDto> employer = employerId != null ? employers.get(employerId) : null;
+      result.add(new VacancyDetails(
+          vacancy.data(),
+          vacancy.validators(),
+          employerId,
+          employer != null ? employer.data() : null,
+          employer != null ? employer.validators() : null));
+    }
+
+    if (result.isEmpty() && archivedCount == 0 && unchangedCount == 0 && lastError != null) {
+      throw lastError;
+    }
+
+    log.info("Fetched details for {} of {} vacancies (unchanged: {}, archived: {}), employers fetched: {} of {} (unchanged: {})",
+        result.size(), vacancyIds.size(), unchangedCount, archivedCount,
+        employers.size(), employerIds.size(), unchangedEmployerIds.size());
+    return result;
+  }
+
+  /**
+   * Сохраняет загруженные вакансии и их работодателей в одной транзакции вместе с их HTTP-валидаторами.
+   * Строки пишутся пакетно через {@link VacancyBulkPersistenceService}, без merge каждой сущности.
+   * Работодатель, общий для нескольких вакансий, сохраняется один раз;
+   * не загружавшийся (свежий) работодатель не сохраняется, а только связывается с вакансией.
+   * Если у сохраненной ранее вакансии изменилось содержимое, по которому выполняется LLM-анализ,
+   * она ставится в очередь на повторный анализ (см. {@link #enqueueChangedContent})
+   *
+   * @param details детали вакансий
+   * @return количество сохраненных вакансий
+   */
+  @Transactional
+  public int saveVacancyDetails(List<VacancyDetails> details) {
+    Map<String, EmployerDto> employers = new LinkedHashMap<>();
+    Map<String, VacancyDto> vacancies = new LinkedHashMap<>();
+    Map<String, String> contentHashes = new HashMap<>();
+    Map<String, HttpValidators> vacancyValidators = new HashMap<>();
+    Map<String, HttpValidators> employerValidators = new HashMap<>();
+    Map<String, String> previousHashes = contentHashRepository.findContentHashes(
+        details.stream().map(detail -> detail.vacancy().getId()).toList());
+    List<String> changedIds = new ArrayList<>();
+    List<String> firstHashedIds = new ArrayList<>();
+
+    for (VacancyDetails detail : details) {
+      VacancyDto vacancy = detail.vacancy();
+      if (vacancies.put(vacancy.getId(), vacancy) != null) {
+        continue;
+      }
+
+      String contentHash = contentHashOf(vacancy);
+      contentHashes.put(vacancy.getId(), contentHash);
+      if (previousHashes.containsKey(vacancy.getId())) {
+        String previousHash = previousHashes.get(vacancy.getId());
+        if (previousHash == null) {
+          firstHashedIds.add(vacancy.getId());
+        } else if (!previousHash.equals(contentHash)) {
+          changedIds.add(vacancy.getId());
+        }
+      }
+
+      if (detail.employer() != null && employers.putIfAbsent(detail.employerId(), detail.employer()) == null) {
+        employerValidators.put(detail.employerId(), detail.employerValidators());
+      }
+      vacancyValidators.put(vacancy.getId(), detail.vacancyValidators());
+    }
+
+    // Работодатели раньше вакансий, чтобы не нарушить внешний ключ
+    bulkPersistenceService.upsertEmployers(employers.values());
+    bulkPersistenceService.upsertVacancies(vacancies.values(), contentHashes);
+
+    validatorRepository.saveValidators(HhResourceValidatorRepository.VACANCY, vacancyValidators);
+    validatorRepository.saveValidators(HhResourceValidatorRepository.EMPLOYER, employerValidators);
+
+    contentHashRepository.adoptLegacyAnalyses(firstHashedIds);
+    enqueueChangedContent(changedIds);
+
+    // В кэш попадают только работодатели, которые действительно сохранены в БД
+    if (!employers.isEmpty()) {
+      Set<String> refreshedIds = Set.copyOf(employers.keySet());
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          employerCache.markRefreshed(refreshedIds);
+        }
+      });
+    }
+
+    log.info("Saved {} vacancies, updated {} employers", vacancies.size(), employers.size());
+    return vacancies.size();
+  }
+
+  private String contentHashOf(VacancyDto vacancy) {
+    List<String> keySkills = vacancy.getKeySkills() == null
+        ? List.of()
+        : vacancy.getKeySkills().stream()
+            .map(skill -> skill.get("name"))
+            .filter(Objects::nonNull)
+            .toList();
+    return contentHasher.hash(vacancy.getDescription(), vacancy.getBrandedDescription(), keySkills);
+  }
+
+  /**
+   * Ставит вакансии с изменившимся содержимым в очередь на анализ, если по старому содержимому
+   * уже были выполнены анализы. Если устарел только JAVA_PRIMARY - на первичный анализ, иначе на полный.
+   * Анализ без refresh повторно выполняет только типы, хэш которых не совпадает с текущим,
+   * поэтому LLM вызывается лишь для затронутых типов, а не изменившиеся вакансии в нее не попадают.
+   * DEAD-задача по такой вакансии возвращается в NEW: изменившееся содержимое дает ей еще один шанс
+   */
+  private void enqueueChangedContent(List<String> changedIds) {
+    if (changedIds.isEmpty()) {
+      return;
+    }
+
+    List<String> firstIds = new ArrayList<>();
+    List<String> fullIds = new ArrayList<>();
+    contentHashRepository.findStaleAnalysisTypes(changedIds).forEach((vacancyId, types) -> {
+      if (types.stream().anyMatch(type -> !VacancyLlmAnalysisType.JAVA_PRIMARY.getId().equals(type))) {
+        fullIds.add(vacancyId);
+      } else {
+        firstIds.add(vacancyId);
+      }
+    });
+
+    int revived = taskQueueRepository.reviveDeadTasks(VACANCY_ENTITY_NAME, firstIds, GenericTaskQueueType.LLM_FIRST)
+        + taskQueueRepository.reviveDeadTasks(VACANCY_ENTITY_NAME, fullIds, GenericTaskQueueType.LLM_FULL);
+    int enqueued = taskQueueRepository.enqueueEntities(VACANCY_ENTITY_NAME, firstIds, GenericTaskQueueType.LLM_FIRST)
+        + taskQueueRepository.enqueueEntities(VACANCY_ENTITY_NAME, fullIds, GenericTaskQueueType.LLM_FULL);
+    log.info("Content changed for {} vacancies, enqueued {} and revived {} DEAD tasks for re-analysis (first: {}, full: {})",
+        changedIds.size(), enqueued, revived, firstIds.size(), fullIds.size());
   }
 
   /**
@@ -174,15 +431,46 @@ public class VacancySyncService {
     }
   }
 
+  private String employerIdOf(VacancyDto vacancyDto) {
+    return vacancyDto.getEmployer() != null ? vacancyDto.getEmployer().getId() : null;
+  }
+
+  /**
+   * Параметры поиска фильтра из базы данных
+   * @param filterCode код фильтра
+   * @param withDates включать ли параметры окна дат (period, date_from, date_to)
+   * @return параметры в порядке загрузки
+   */
+  public List<Map<String, String>> getFilterRequestParams(String filterCode, boolean withDates) {
+    return getFilterParams(filterCode).stream()
+        .map(param -> Map.of(param.getParamName(), param.getParamValue()))
+        .filter(param -> withDates || !VacancyApiClient.isDateParam(param))
+        .toList();
+  }
+
+  /**
+   * Ключ отметки инкрементальной синхронизации: код фильтра и отпечаток его параметров без параметров дат.
+   * Изменение условий поиска начинает отсчет заново, а изменение period/date_* (окно все равно
+   * задает синхронизация) отметку не сбрасывает
+   */
+  public String syncStateKey(String filterCode) {
+    String params = getFilterRequestParams(filterCode, false).stream()
+        .flatMap(param -> param.entrySet().stream())
+        .map(param -> param.getKey() + "=" + param.getValue())
+        .sorted()
+        .collect(Collectors.joining("&"));
+    return filterCode + ":" + DigestUtils.md5DigestAsHex(params.getBytes(StandardCharsets.UTF_8));
+  }
+
   /**
    * Получение параметров фильтра из базы данных
    * @return список параметров фильтра
    */
-  private List<VacancyFilterParams> getFilterParams() {
+  private List<VacancyFilterParams> getFilterParams(String filterCode) {
     try {
       List<VacancyFilterParams> filterParams = dataManager.load(VacancyFilterParams.class)
           .query("select e from jb2_VacancyFilterParams e where e.vacancyFilter.code = :filterCode")
-          .parameter("filterCode", DEFAULT_FILTER)
+          .parameter("filterCode", filterCode)
           .list();
       log.debug("Loaded {} filter parameters", filterParams.size());
       return filterParams;
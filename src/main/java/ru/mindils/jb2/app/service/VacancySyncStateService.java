@@ -0,0 +1,61 @@
+package ru.mindils.jb2.app.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
+import ru.mindils.jb2.app.repository.VacancySyncStateRepository;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Инкрементальная синхронизация вакансий: каждый запуск запрашивает только вакансии,
+ * опубликованные с начала последней успешной синхронизации фильтра (с перекрытием jb2.hh.sync-overlap
+ * на расхождение часов и задержку индексации hh.ru)
+ */
+@Service
+public class VacancySyncStateService {
+
+  private static final Logger log = LoggerFactory.getLogger(VacancySyncStateService.class);
+
+  private final VacancySyncStateRepository syncStateRepository;
+  private final Duration overlap;
+
+  public VacancySyncStateService(VacancySyncStateRepository syncStateRepository,
+                                 @Value("${jb2.hh.sync-overlap:PT30M}") Duration overlap) {
+    this.syncStateRepository = syncStateRepository;
+    this.overlap = overlap;
+  }
+
+  /**
+   * Начинает синхронизацию фильтра: окно начинается от отметки последней успешной синхронизации
+   * минус перекрытие, а если ее не было - за последние initialDays дней
+   */
+  public VacancySyncWindow beginSync(String filterCode, int initialDays) {
+    OffsetDateTime startedAt = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+    OffsetDateTime watermark = syncStateRepository.findWatermark(filterCode);
+
+    OffsetDateTime dateFrom = watermark != null
+        ? watermark.minus(overlap)
+        : startedAt.minusDays(initialDays);
+
+    syncStateRepository.markStarted(filterCode, dateFrom, startedAt);
+    log.info("Starting incremental sync for filter {}: vacancies published since {} (watermark: {})",
+        filterCode, dateFrom, watermark);
+
+    return new VacancySyncWindow(filterCode, dateFrom, startedAt);
+  }
+
+  /**
+   * Сдвигает отметку фильтра на начало успешно завершенной синхронизации
+   */
+  public void completeSync(VacancySyncWindow window) {
+    syncStateRepository.markCompleted(window.getFilterCode(), window.getStartedAt());
+    log.info("Incremental sync for filter {} completed, watermark moved to {}",
+        window.getFilterCode(), window.getStartedAt());
+  }
+}
@@ -27,15 +27,7 @@ public class VacancyUpdateWorkflowService {
   public void startUpdateWorkflow(String vacancyId) {
     log.info("Starting vacancy update workflow for vacancy: {}", vacancyId);
 
-    String workflowId = "vacancy-update-" + vacancyId + "-" + System.currentTimeMillis();
-
-    VacancyUpdateWorkflow workflow = workflowClient.newWorkflowStub(
-        VacancyUpdateWorkflow.class,
-        WorkflowOptions.newBuilder()
-            .setTaskQueue(VacancySyncConstants.VACANCY_QUEUE)
-            .setWorkflowId(workflowId)
-            .build()
-    );
+    VacancyUpdateWorkflow workflow = newWorkflowStub(vacancyId);
 
     try {
       workflow.updateVacancy(vacancyId);
@@ -45,4 +37,22 @@ public class VacancyUpdateWorkflowService {
       throw new RuntimeException("Ошибка при обновлении вакансии: " + e.getMessage(), e);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Создает stub нового workflow обновления вакансии, не запуская его.
+   * Нужен тем, кто запускает workflow асинхронно и может его отменить
+   *
+   * @param vacancyId ID вакансии
+   */
+  public VacancyUpdateWorkflow newWorkflowStub(String vacancyId) {
+    String workflowId = "vacancy-update-" + vacancyId + "-" + System.currentTimeMillis();
+
+    return workflowClient.newWorkflowStub(
+        VacancyUpdateWorkflow.class,
+        WorkflowOptions.newBuilder()
+            .setTaskQueue(VacancySyncConstants.VACANCY_QUEUE)
+            .setWorkflowId(workflowId)
+            .build()
+    );
+  }
+}
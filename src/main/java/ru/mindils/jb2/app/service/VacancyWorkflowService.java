@@ -1,5 +1,6 @@
 package ru.mindils.jb2.app.service;
 
+import io.jmix.core.security.SystemAuthenticator;
 import io.temporal.api.common.v1.WorkflowExecution;
 import io.temporal.api.enums.v1.WorkflowExecutionStatus;
 import io.temporal.api.workflowservice.v1.DescribeWorkflowExecutionRequest;
@@ -8,6 +9,7 @@ import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
 import io.temporal.serviceclient.WorkflowServiceStubs;
 import org.springframework.stereotype.Service;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
 import ru.mindils.jb2.app.temporal.VacancySyncConstants;
 import ru.mindils.jb2.app.temporal.workflow.VacancySyncWorkflow;
 
@@ -19,9 +21,19 @@ public class VacancyWorkflowService {
   private final WorkflowClient workflowClient;
   private final WorkflowServiceStubs service;
 
-  public VacancyWorkflowService(WorkflowClient workflowClient, WorkflowServiceStubs service) {
+  private final VacancySyncStateService vacancySyncStateService;
+  private final VacancySyncService vacancySyncService;
+  private final SystemAuthenticator authenticator;
+
+  public VacancyWorkflowService(WorkflowClient workflowClient, WorkflowServiceStubs service,
+                                VacancySyncStateService vacancySyncStateService,
+                                VacancySyncService vacancySyncService,
+                                SystemAuthenticator authenticator) {
     this.workflowClient = workflowClient;
     this.service = service;
+    this.vacancySyncStateService = vacancySyncStateService;
+    this.vacancySyncService = vacancySyncService;
+    this.authenticator = authenticator;
   }
 
   // Оригинальный метод без параметров (для обратной совместимости)
@@ -31,15 +43,22 @@ public class VacancyWorkflowService {
 
   // Новый метод с параметрами
   public void sync(List<Map<String, String>> requestParams) {
-    VacancySyncWorkflow workflow = workflowClient.newWorkflowStub(
-        VacancySyncWorkflow.class,
-        WorkflowOptions.newBuilder()
-            .setTaskQueue(VacancySyncConstants.VACANCY_QUEUE)
-            .setWorkflowId(VacancySyncConstants.WORKFLOW_ID)
-            .build()
-    );
+    VacancySyncWorkflow workflow = newSyncWorkflowStub();
+    WorkflowClient.start(() -> workflow.run(requestParams, null));
+  }
 
-    WorkflowClient.start(() -> workflow.run(requestParams));
+  /**
+   * Инкрементальная синхронизация фильтра: запрашиваются только вакансии, опубликованные
+   * с последней успешной синхронизации (или за initialDays дней, если ее еще не было).
+   * Отметка хранится по коду фильтра вместе с отпечатком его параметров без дат, см. {@link VacancySyncService#syncStateKey}
+   */
+  public void syncIncremental(String filterCode, int initialDays) {
+    String syncKey = authenticator.withSystem(() -> vacancySyncService.syncStateKey(filterCode));
+    VacancySyncWindow window = vacancySyncStateService.beginSync(syncKey, initialDays);
+
+    // Окно дат в параметры поиска подставляет планировщик поиска
+    VacancySyncWorkflow workflow = newSyncWorkflowStub();
+    WorkflowClient.start(() -> workflow.run(List.of(), window));
   }
 
   /**
@@ -90,4 +109,14 @@ public class VacancyWorkflowService {
       return false;
     }
   }
-}
\ No newline at end of file
+
+  private VacancySyncWorkflow newSyncWorkflowStub() {
+    return workflowClient.newWorkflowStub(
+        VacancySyncWorkflow.class,
+        WorkflowOptions.newBuilder()
+            .setTaskQueue(VacancySyncConstants.VACANCY_QUEUE)
+            .setWorkflowId(VacancySyncConstants.WORKFLOW_ID)
+            .build()
+    );
+  }
+}
@@ -20,17 +20,10 @@ public class BenefitsPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Проанализируй IT-вакансию. Верни JSON про льготы и бенефиты.
         
-        ДАННЫЕ:
-        Название: {name}
-        Описание: {description}
-        Описание(Бренд): {brandedDescription}
-        Компания: {employer}
-        Компания(Бренд): {employerBranded}
-        
         ПРАВИЛО: Ставь true ТОЛЬКО если ЯВНО написано. Если не упомянуто - пиши false.
         
         === ЧТО ИЩЕМ ===
@@ -88,6 +81,18 @@ public class BenefitsPromptGenerator implements PromptGenerator {
           "internal_training": true|false,
           "paid_sick_leave": true|false
         }
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+        ДАННЫЕ:
+        Название: {name}
+        Описание: {description}
+        Описание(Бренд): {brandedDescription}
+        Компания: {employer}
+        Компания(Бренд): {employerBranded}
         """
         .replace("{name}", valueOrEmpty(vacancy.getName()))
         .replace("{description}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getDescription())))
@@ -0,0 +1,111 @@
+package ru.mindils.jb2.app.service.analysis.prompt;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+import ru.mindils.jb2.app.dto.LlmPrompt;
+import ru.mindils.jb2.app.entity.Employer;
+import ru.mindils.jb2.app.entity.Vacancy;
+import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
+import ru.mindils.jb2.app.util.HtmlToMarkdownConverter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Промпт комбинированного анализа: данные вакансии передаются один раз,
+ * а инструкции нескольких типов анализа собираются в разделы одного system-сообщения.
+ * Ответ - один JSON-объект, где ключ - код типа анализа, а значение - ответ раздела
+ */
+@Component
+public class CombinedPromptGenerator {
+
+  private final Map<VacancyLlmAnalysisType, PromptGenerator> promptGenerators;
+  private final HtmlToMarkdownConverter htmlConverter;
+
+  public CombinedPromptGenerator(List<PromptGenerator> promptGenerators, HtmlToMarkdownConverter htmlConverter) {
+    this.promptGenerators = promptGenerators.stream()
+        .collect(Collectors.toMap(PromptGenerator::getSupportedType, Function.identity()));
+    this.htmlConverter = htmlConverter;
+  }
+
+  public LlmPrompt generatePrompt(Vacancy vacancy, List<VacancyLlmAnalysisType> types) {
+    String sectionKeys = types.stream()
+        .map(VacancyLlmAnalysisType::getId)
+        .collect(Collectors.joining(", "));
+
+    StringBuilder instructions = new StringBuilder();
+    instructions.append("""
+        Проанализируй IT-вакансию сразу по нескольким разделам. Все разделы относятся к одной вакансии,
+        ее данные приведены один раз в следующем сообщении (в разделах поля могут называться немного иначе:
+        "Вакансия" = "Название", "О компании" = "Компания").
+
+        Верни ОДИН JSON-объект без текста вокруг. Ключи - коды разделов: %s.
+        Значение каждого ключа - JSON-ответ раздела строго в формате, который указан в самом разделе.
+        Разделы анализируй независимо друг от друга, правила одного раздела не применяй к другому.
+        """.formatted(sectionKeys));
+
+    for (VacancyLlmAnalysisType type : types) {
+      PromptGenerator generator = promptGenerators.get(type);
+      if (generator == null) {
+        throw new IllegalArgumentException("No prompt generator found for analysis type: " + type);
+      }
+      instructions.append("\n=== РАЗДЕЛ ").append(type.getId()).append(" ===\n\n")
+          .append(generator.getInstructions());
+    }
+
+    return new LlmPrompt(instructions.toString(), formatVacancyData(vacancy));
+  }
+
+  private String formatVacancyData(Vacancy vacancy) {
+    Employer employer = vacancy.getEmployer();
+    return """
+        === ДАННЫЕ ВАКАНСИИ ===
+
+        Название: {name}
+        Зарплата: {salary}
+        Город: {city}
+        График: {schedule}
+        Занятость: {employment}
+        Формат работы: {workFormat}
+        Навыки: {skills}
+
+        Описание:
+        {description}
+
+        Описание(Бренд):
+        {descriptionBranded}
+
+        Компания:
+        {employer}
+
+        Компания(Бренд):
+        {employerBranded}
+
+        Индустрия: {employerIndustries}
+        """
+        .replace("{name}", valueOrEmpty(vacancy.getName()))
+        .replace("{salary}", valueOrEmpty(vacancy.getSalaryStr()))
+        .replace("{city}", vacancy.getArea() != null ? valueOrEmpty(vacancy.getCity()) : "")
+        .replace("{schedule}", getJsonFieldName(vacancy.getSchedule()))
+        .replace("{employment}", getJsonFieldName(vacancy.getEmployment()))
+        .replace("{workFormat}", valueOrEmpty(vacancy.getWorkFormatStr()))
+        .replace("{skills}", valueOrEmpty(vacancy.getKeySkillsStr()))
+        .replace("{description}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getDescription())))
+        .replace("{descriptionBranded}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getBrandedDescription())))
+        .replace("{employer}", employer != null
+            ? htmlConverter.convertToMarkdown(valueOrEmpty(employer.getDescription())) : "")
+        .replace("{employerBranded}", employer != null
+            ? htmlConverter.convertToMarkdown(valueOrEmpty(employer.getBrandedDescription())) : "")
+        .replace("{employerIndustries}", employer != null ? valueOrEmpty(employer.getIndustriesStr()) : "");
+  }
+
+  private String valueOrEmpty(String value) {
+    return value != null ? value : "";
+  }
+
+  private String getJsonFieldName(JsonNode node) {
+    return node != null ? node.path("name").asText("") : "";
+  }
+}
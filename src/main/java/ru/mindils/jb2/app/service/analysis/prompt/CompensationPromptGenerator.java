@@ -20,16 +20,10 @@ public class CompensationPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
       Проанализируй IT-вакансию. Верни JSON с информацией о зарплате.
       
-      ДАННЫЕ:
-      Название: {name}
-      Зарплата: {salary}
-      Описание: {description}
-      Описание(Бренд): {descriptionBranded}
-      
       ПРАВИЛО: Отвечай ТОЛЬКО на основе текста. Если информации НЕТ - пиши "none"
       
       === ЧТО АНАЛИЗИРОВАТЬ ===
@@ -94,6 +88,17 @@ public class CompensationPromptGenerator implements PromptGenerator {
         "bonusesAvailable": true|false,
         "equityOffered": true|false
       }
+      """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+      ДАННЫЕ:
+      Название: {name}
+      Зарплата: {salary}
+      Описание: {description}
+      Описание(Бренд): {descriptionBranded}
       """
         .replace("{name}", valueOrEmpty(vacancy.getName()))
         .replace("{salary}", valueOrEmpty(vacancy.getSalaryStr()))
@@ -20,17 +20,10 @@ public class EquipmentPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Проанализируй IT-вакансию. Верни JSON про оборудование.
         
-        ДАННЫЕ:
-        Название: {name}
-        Описание: {description}
-        Описание(Бренд): {descriptionBranded}
-        Компания: {employer}
-        Компания(Бренд): {employerBranded}
-        
         ПРАВИЛО: Отвечай ТОЛЬКО если ЯВНО написано. Если нет информации - пиши "none".
         
         === ЧТО ИЩЕМ ===
@@ -79,6 +72,18 @@ public class EquipmentPromptGenerator implements PromptGenerator {
           "macos_mentioned": "provided|allowed|both|none",
           "equipment_compensation": "full|partial|none"
         }
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+        ДАННЫЕ:
+        Название: {name}
+        Описание: {description}
+        Описание(Бренд): {descriptionBranded}
+        Компания: {employer}
+        Компания(Бренд): {employerBranded}
         """
         .replace("{name}", valueOrEmpty(vacancy.getName()))
         .replace("{description}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getDescription())))
@@ -19,7 +19,7 @@ public class IndustryPromptGenerator implements PromptGenerator {
     }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Определи ОТРАСЛЬ компании и проекта по описанию IT-вакансии.
         
@@ -82,7 +82,12 @@ public class IndustryPromptGenerator implements PromptGenerator {
         5. Игнорируй технологии: Java, Python, React, Kubernetes и т.д.
         6. При нескольких направлениях: выбери ОДНО основное
         7. ВАЖНО: МФО и микрозаймы = harmful (toxic), НЕ fintech!
-        
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
         ДАННЫЕ:
         Вакансия: {name}
         Описание: {description}
@@ -20,16 +20,10 @@ public class JavaPrimaryPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Analyze the IT job posting (in Russian) and determine category matches. Return ONLY JSON without additional text.
         
-        Job posting:
-        Title: {name}
-        Description: {description}
-        DescriptionBranded: {descriptionBranded}
-        Key skills: {skills}
-        
         Analysis criteria:
         
         1. JAVA (java: true) — позиция требует ПРЯМОЙ разработки на Java:
@@ -61,6 +55,17 @@ public class JavaPrimaryPromptGenerator implements PromptGenerator {
         {
           "java": boolean
         }
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+        Job posting:
+        Title: {name}
+        Description: {description}
+        DescriptionBranded: {descriptionBranded}
+        Key skills: {skills}
         """
         .replace("{name}", vacancy.getName())
         .replace("{description}", htmlConverter.convertToMarkdown(vacancy.getDescription()))
@@ -1,10 +1,24 @@
 package ru.mindils.jb2.app.service.analysis.prompt;
 
+import ru.mindils.jb2.app.dto.LlmPrompt;
 import ru.mindils.jb2.app.entity.Vacancy;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
 
 public interface PromptGenerator {
   VacancyLlmAnalysisType getSupportedType();
 
-  String generatePrompt(Vacancy vacancy);
-}
\ No newline at end of file
+  /**
+   * Инструкции анализа без данных вакансии: задача, правила и формат JSON-ответа.
+   * Текст не должен зависеть от вакансии - он отправляется system-сообщением и кэшируется провайдером
+   */
+  String getInstructions();
+
+  /**
+   * Данные вакансии, которые нужны этому типу анализа
+   */
+  String formatVacancyData(Vacancy vacancy);
+
+  default LlmPrompt generatePrompt(Vacancy vacancy) {
+    return new LlmPrompt(getInstructions(), formatVacancyData(vacancy));
+  }
+}
@@ -20,18 +20,10 @@ public class StopFactorsPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Проанализируй IT-вакансию. Верни JSON про стоп-факторы.
         
-        ДАННЫЕ:
-        Название: {name}
-        Описание: {description}
-        Описание(Бренд): {descriptionBranded}
-        Компания: {employer}
-        Компания(Бренд): {employerBranded}
-        Индустрия: {employerIndustries}
-        
         ПРАВИЛО: Ставь true ТОЛЬКО если ЯВНО написано. Если не упомянуто - пиши false.
         
         === ЧТО ИЩЕМ ===
@@ -69,6 +61,19 @@ public class StopFactorsPromptGenerator implements PromptGenerator {
           "toxic_culture": true|false,
           "banned_domain": true|false
         }
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+        ДАННЫЕ:
+        Название: {name}
+        Описание: {description}
+        Описание(Бренд): {descriptionBranded}
+        Компания: {employer}
+        Компания(Бренд): {employerBranded}
+        Индустрия: {employerIndustries}
         """
         .replace("{name}", valueOrEmpty(vacancy.getName()))
         .replace("{description}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getDescription())))
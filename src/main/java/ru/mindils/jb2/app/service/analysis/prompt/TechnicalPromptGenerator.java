@@ -20,16 +20,10 @@ public class TechnicalPromptGenerator implements PromptGenerator {
   }
 
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Проанализируй IT-вакансию. Верни JSON про технические требования.
         
-        ДАННЫЕ:
-        Название: {name}
-        Описание: {description}
-        Описание(Бренд): {descriptionBranded}
-        Навыки: {skills}
-        
         ПРАВИЛО: Анализируй только на основе текста. Если неясно - выбирай "none" или самое подходящее.
         
         === ЧТО ОПРЕДЕЛИТЬ ===
@@ -89,6 +83,17 @@ public class TechnicalPromptGenerator implements PromptGenerator {
           "jmix": true|false,
           "ai_presence": "allowed|project_optional|project_required|none"
         }
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
+        ДАННЫЕ:
+        Название: {name}
+        Описание: {description}
+        Описание(Бренд): {descriptionBranded}
+        Навыки: {skills}
         """
         .replace("{name}", valueOrEmpty(vacancy.getName()))
         .replace("{description}", htmlConverter.convertToMarkdown(valueOrEmpty(vacancy.getDescription())))
@@ -14,7 +14,7 @@ public class WorkConditionsPromptGenerator implements PromptGenerator {
     return VacancyLlmAnalysisType.WORK_CONDITIONS;
   }
   @Override
-  public String generatePrompt(Vacancy vacancy) {
+  public String getInstructions() {
     return """
         Проанализируй IT-вакансию и определи условия работы. Отвечай ТОЛЬКО на основе текста вакансии.
         
@@ -156,7 +156,12 @@ public class WorkConditionsPromptGenerator implements PromptGenerator {
           "relocationRequired": "required",
           "relocationDestination": "within_russia"
         }
-        
+        """;
+  }
+
+  @Override
+  public String formatVacancyData(Vacancy vacancy) {
+    return """
         === ДАННЫЕ ВАКАНСИИ ===
         
         Название: {name}
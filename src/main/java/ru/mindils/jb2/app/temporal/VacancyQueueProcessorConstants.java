@@ -1,6 +1,31 @@
 package ru.mindils.jb2.app.temporal;
 
+import java.time.Duration;
+
 public class VacancyQueueProcessorConstants {
   public static final String QUEUE = "vacancy-queue-processor";
+  // Прежние обработчики очереди по типам (WORKFLOW_ID + "_" + тип), оставлены для уже запущенных экземпляров
   public static final String WORKFLOW_ID = "vacancy-queue-processor-workflow";
+  // Общий планировщик - единственный, кто разбирает очередь: все типы задач с учетом весов
+  public static final String SCHEDULER_WORKFLOW_ID = "vacancy-queue-scheduler-workflow";
+  // Сколько задач одного типа выполняется одновременно, если не задано в настройках
+  public static final int DEFAULT_CONCURRENCY = 1;
+  public static final String CONCURRENCY_PROPERTY_PREFIX = "jb2.queue-processor.concurrency.";
+  // Доля слотов планировщика, которая достается типу задач при общей очереди
+  public static final int DEFAULT_WEIGHT = 1;
+  public static final String WEIGHT_PROPERTY_PREFIX = "jb2.queue-processor.weight.";
+  public static final int DEFAULT_SCHEDULER_CONCURRENCY = 8;
+  // Аренда захваченной задачи: исполнитель продлевает ее, пока задача выполняется.
+  // Должна быть длиннее heartbeat timeout activity (1 мин), иначе reaper вернет задачу раньше,
+  // чем Temporal заметит смерть исполнителя
+  public static final Duration LEASE_DURATION = Duration.ofMinutes(2);
+  public static final Duration LEASE_HEARTBEAT_INTERVAL = Duration.ofSeconds(10);
+  // Повторные попытки упавших задач: после MAX_ATTEMPTS задача уходит в DEAD
+  public static final int MAX_ATTEMPTS = 5;
+  public static final Duration RETRY_BASE_DELAY = Duration.ofMinutes(1);
+  public static final Duration RETRY_MAX_DELAY = Duration.ofHours(1);
+  // Окно, в котором распределяются задачи при ручном перезапуске FAILED/DEAD
+  public static final Duration RETRY_SPREAD = Duration.ofMinutes(10);
+  // Канал pg_notify, в который триггер пишет тип задачи при добавлении NEW-задач в очередь
+  public static final String NOTIFY_CHANNEL = "jb2_generic_task_queue";
 }
\ No newline at end of file
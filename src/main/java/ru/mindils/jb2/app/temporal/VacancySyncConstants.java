@@ -3,5 +3,7 @@ package ru.mindils.jb2.app.temporal;
 public class VacancySyncConstants {
   public static final String VACANCY_QUEUE = "VACANCY_QUEUE";
   public static final String WORKFLOW_ID = "VACANCY_SYNC"; // Исправлена опечатка
+  // Код фильтра вакансий, параметры которого используются при поиске
+  public static final String DEFAULT_FILTER_CODE = "DEFAULT";
   private VacancySyncConstants() {}
 }
\ No newline at end of file
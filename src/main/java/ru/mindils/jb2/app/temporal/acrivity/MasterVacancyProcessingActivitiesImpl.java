@@ -4,23 +4,24 @@ import io.jmix.core.DataManager;
 import io.jmix.core.FetchPlans;
 import io.jmix.core.LoadContext;
 import io.jmix.core.security.SystemAuthenticator;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.client.WorkflowClient;
 import io.temporal.spring.boot.ActivityImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysis;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisStatus;
 import ru.mindils.jb2.app.repository.GenericTaskQueueRepository;
 import ru.mindils.jb2.app.service.*;
 import ru.mindils.jb2.app.temporal.MasterVacancyProcessingConstants;
-import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
 import ru.mindils.jb2.app.temporal.VacancySyncConstants;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 @Component
@@ -76,24 +77,16 @@ public class MasterVacancyProcessingActivitiesImpl implements MasterVacancyProce
   public void processUpdateQueue() {
     log.info("Starting update queue processing");
 
-    String workflowId = VacancyQueueProcessorConstants.WORKFLOW_ID + "_" +
-        GenericTaskQueueType.VACANCY_UPDATE.getId();
-
-    if (temporalStatusService.isWorkflowRunning(workflowId)) {
-      log.warn("Update queue processor already running, waiting for completion");
-      waitForWorkflowCompletion(workflowId, 120);
-      return;
-    }
-
-    queueProcessorWorkflowService.startVacancyUpdateQueueProcessing();
-    waitForWorkflowCompletion(workflowId, 120);
+    // Планировщик мог уже быть запущен по уведомлению о новых задачах - будим его или запускаем
+    queueProcessorWorkflowService.wakeUpScheduler();
+    waitForQueueDrained(GenericTaskQueueType.VACANCY_UPDATE, 120);
 
     log.info("Update queue processing completed");
   }
 
   @Override
   public void syncRecentVacancies(int days) {
-    log.info("Syncing vacancies for last {} days", days);
+    log.info("Syncing vacancies since last successful sync (initial window: {} days)", days);
 
     String workflowId = VacancySyncConstants.WORKFLOW_ID;
 
@@ -103,7 +96,8 @@ public class MasterVacancyProcessingActivitiesImpl implements MasterVacancyProce
       return;
     }
 
-    vacancyWorkflowService.sync(List.of(Map.of("period", String.valueOf(days))));
+    // Запрашиваем только окно с последней успешной синхронизации, days - окно первого запуска
+    vacancyWorkflowService.syncIncremental(VacancySyncConstants.DEFAULT_FILTER_CODE, days);
     waitForWorkflowCompletion(workflowId, 60);
 
     log.info("Recent vacancies sync completed");
@@ -125,17 +119,9 @@ public class MasterVacancyProcessingActivitiesImpl implements MasterVacancyProce
   public void processFullAnalysisQueue() {
     log.info("Starting full analysis queue processing");
 
-    String workflowId = VacancyQueueProcessorConstants.WORKFLOW_ID + "_" +
-        GenericTaskQueueType.LLM_FULL.getId();
-
-    if (temporalStatusService.isWorkflowRunning(workflowId)) {
-      log.warn("Full analysis queue processor already running, waiting for completion");
-      waitForWorkflowCompletion(workflowId, 180);
-      return;
-    }
-
-    queueProcessorWorkflowService.startFullAnalysisQueueProcessing();
-    waitForWorkflowCompletion(workflowId, 180);
+    // Планировщик мог уже быть запущен по уведомлению о новых задачах - будим его или запускаем
+    queueProcessorWorkflowService.wakeUpScheduler();
+    waitForQueueDrained(GenericTaskQueueType.LLM_FULL, 180);
 
     log.info("Full analysis queue processing completed");
   }
@@ -270,4 +256,48 @@ public class MasterVacancyProcessingActivitiesImpl implements MasterVacancyProce
 
     log.info("Workflow {} completed", workflowId);
   }
-}
\ No newline at end of file
+
+  /**
+   * Ждет, пока в очереди не останется задач указанного типа в NEW и PROCESSING.
+   * Планировщик разбирает все типы сразу и может работать дольше, поэтому его завершения не ждем
+   */
+  private void waitForQueueDrained(GenericTaskQueueType queueType, int timeoutMinutes) {
+    log.info("Waiting for {} queue to drain (timeout: {} minutes)", queueType, timeoutMinutes);
+
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    long startTime = System.currentTimeMillis();
+    long timeoutMs = timeoutMinutes * 60 * 1000L;
+
+    while (true) {
+      int pending = genericTaskQueueRepository.getCountByTypeAndStatus(queueType, GenericTaskQueueStatus.NEW)
+          + genericTaskQueueRepository.getCountByTypeAndStatus(queueType, GenericTaskQueueStatus.PROCESSING);
+      if (pending <= 0) {
+        break;
+      }
+
+      long elapsed = System.currentTimeMillis() - startTime;
+      if (elapsed > timeoutMs) {
+        throw new RuntimeException(
+            "Timeout waiting for " + queueType + " queue after " + timeoutMinutes + " minutes, "
+                + pending + " tasks left"
+        );
+      }
+
+      context.heartbeat(pending);
+
+      try {
+        // Проверяем каждые 10 секунд
+        Thread.sleep(10000);
+
+        if (elapsed % 60000 < 10000) { // Логируем каждую минуту
+          log.info("{} queue still has {} tasks, elapsed: {} minutes", queueType, pending, elapsed / 60000);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for queue to drain", e);
+      }
+    }
+
+    log.info("{} queue drained", queueType);
+  }
+}
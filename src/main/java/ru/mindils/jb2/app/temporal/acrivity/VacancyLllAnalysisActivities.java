@@ -5,6 +5,8 @@ import ru.mindils.jb2.app.dto.LlmAnalysisResponse;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisStatus;
 import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @ActivityInterface
@@ -15,6 +17,12 @@ public interface VacancyLllAnalysisActivities {
    */
   LlmAnalysisResponse analyze(String vacancyId, VacancyLlmAnalysisType type);
 
+  /**
+   * Комбинированный анализ нескольких типов одним вызовом LLM.
+   * Возвращает результаты только тех типов, разделы которых прошли проверку
+   */
+  Map<VacancyLlmAnalysisType, LlmAnalysisResponse> analyzeCombined(String vacancyId, List<VacancyLlmAnalysisType> types);
+
   /**
    * Сохраняет результат анализа из DTO
    */
@@ -43,4 +51,15 @@ public interface VacancyLllAnalysisActivities {
    * Получает существующий результат анализа
    */
   LlmAnalysisResponse getExistingAnalysis(String vacancyId, VacancyLlmAnalysisType type);
-}
\ No newline at end of file
+
+  /**
+   * Сколько независимых типов анализа одной вакансии выполнять одновременно (jb2.llm.analysis-parallelism)
+   */
+  int getAnalysisParallelism();
+
+  /**
+   * Задана ли хотя бы одна модель для комбинированного анализа (jb2.llm.combined-analysis-models).
+   * Подходит ли модель конкретного вызова, проверяет analyzeCombined: если нет, он возвращает пустой результат
+   */
+  boolean isCombinedAnalysisEnabled();
+}
@@ -6,6 +6,7 @@ import io.jmix.core.security.SystemAuthenticator;
 import io.temporal.spring.boot.ActivityImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.mindils.jb2.app.dto.LlmAnalysisResponse;
 import ru.mindils.jb2.app.entity.Vacancy;
@@ -14,6 +15,8 @@ import ru.mindils.jb2.app.entity.VacancyLlmAnalysisType;
 import ru.mindils.jb2.app.service.VacancyLlmAnalysisService;
 import ru.mindils.jb2.app.temporal.VacancyLlmAnalysisConstants;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -26,13 +29,16 @@ public class VacancyLlmAnalysisActivitiesImpl implements VacancyLllAnalysisActiv
   private final VacancyLlmAnalysisService vacancyLlmAnalysisService;
   private final SystemAuthenticator authenticator;
   private final DataManager dataManager;
+  private final int analysisParallelism;
 
   public VacancyLlmAnalysisActivitiesImpl(VacancyLlmAnalysisService vacancyLlmAnalysisService,
                                           SystemAuthenticator authenticator,
-                                          DataManager dataManager) {
+                                          DataManager dataManager,
+                                          @Value("${jb2.llm.analysis-parallelism:3}") int analysisParallelism) {
     this.vacancyLlmAnalysisService = vacancyLlmAnalysisService;
     this.authenticator = authenticator;
     this.dataManager = dataManager;
+    this.analysisParallelism = analysisParallelism;
   }
 
   @Override
@@ -59,6 +65,21 @@ public class VacancyLlmAnalysisActivitiesImpl implements VacancyLllAnalysisActiv
     });
   }
 
+  @Override
+  public Map<VacancyLlmAnalysisType, LlmAnalysisResponse> analyzeCombined(String vacancyId,
+                                                                         List<VacancyLlmAnalysisType> types) {
+    return authenticator.withSystem(() -> {
+      log.info("Starting combined analysis activity for vacancy {} with types {}", vacancyId, types);
+
+      Vacancy vacancy = dataManager.load(Vacancy.class)
+          .id(vacancyId)
+          .optional()
+          .orElseThrow(() -> new RuntimeException("Vacancy not found: " + vacancyId));
+
+      return vacancyLlmAnalysisService.analyzeCombined(vacancy, types);
+    });
+  }
+
   @Override
   public void saveAnalysisResult(String vacancyId, VacancyLlmAnalysisType type, LlmAnalysisResponse llmResponse) {
     authenticator.runWithSystem(() -> {
@@ -118,4 +139,14 @@ public class VacancyLlmAnalysisActivitiesImpl implements VacancyLllAnalysisActiv
       return vacancyLlmAnalysisService.getExistingAnalysis(vacancyId, type);
     });
   }
-}
\ No newline at end of file
+
+  @Override
+  public int getAnalysisParallelism() {
+    return analysisParallelism;
+  }
+
+  @Override
+  public boolean isCombinedAnalysisEnabled() {
+    return vacancyLlmAnalysisService.isCombinedAnalysisEnabled();
+  }
+}
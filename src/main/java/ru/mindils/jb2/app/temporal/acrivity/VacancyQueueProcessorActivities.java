@@ -6,23 +6,56 @@ import ru.mindils.jb2.app.dto.GenericTaskQueueDto;
 import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 
-import java.util.Optional;
+import java.util.List;
+import java.util.Map;
 
 @ActivityInterface
 public interface VacancyQueueProcessorActivities {
 
+  /**
+   * Атомарно забирает до limit задач из очереди (NEW -> PROCESSING) для указанного исполнителя.
+   * Задачи распределяются между типами по весам (jb2.queue-processor.weight.*),
+   * из каждого типа берется не больше slotsByType задач
+   */
   @ActivityMethod
-  Optional<GenericTaskQueueDto> getNextTask(GenericTaskQueueType queueType);
+  List<GenericTaskQueueDto> claimTasks(Map<GenericTaskQueueType, Integer> slotsByType, int limit, String workerId);
 
+  /**
+   * Через сколько секунд станет доступна ближайшая отложенная после ошибки задача указанных типов
+   *
+   * @return число секунд или null, если отложенных задач нет
+   */
   @ActivityMethod
-  void updateTaskStatus(Long taskId, GenericTaskQueueStatus status, String errorMessage);
+  Long getSecondsUntilNextAttempt(List<GenericTaskQueueType> types);
 
+  /**
+   * Фиксирует итоговый статус задачи, если она все еще захвачена исполнителем workerId
+   *
+   * @return false, если аренду задачи уже забрал другой исполнитель и статус не изменен
+   */
   @ActivityMethod
-  void executeVacancyFirstAnalysisWorkflow(String vacancyId);
+  boolean updateTaskStatus(Long taskId, String workerId, GenericTaskQueueStatus status, String errorMessage);
 
+  /**
+   * Фиксирует ошибку выполнения задачи: откладывает ее повтор с backoff или переводит в DEAD
+   *
+   * @return новый статус задачи (NEW или DEAD) или null, если задача уже не захвачена исполнителем workerId
+   */
   @ActivityMethod
-  void executeVacancyFullAnalysisWorkflow(String vacancyId);
+  GenericTaskQueueStatus failTask(Long taskId, String workerId, String errorMessage);
 
-  void executeVacancyUpdateWorkflow(String vacancyId);
+  /**
+   * Методы execute* выполняют задачу taskId и, пока она выполняется,
+   * шлют heartbeat и продлевают ее аренду в очереди от имени workerId.
+   * Если аренду забрал другой исполнитель, запущенный workflow отменяется, а activity падает без повторов
+   */
+  @ActivityMethod
+  void executeVacancyFirstAnalysisWorkflow(Long taskId, String workerId, String vacancyId);
+
+  @ActivityMethod
+  void executeVacancyFullAnalysisWorkflow(Long taskId, String workerId, String vacancyId);
+
+  @ActivityMethod
+  void executeVacancyUpdateWorkflow(Long taskId, String workerId, String vacancyId);
 
 }
\ No newline at end of file
@@ -2,25 +2,38 @@ package ru.mindils.jb2.app.temporal.acrivity;
 
 import io.jmix.core.DataManager;
 import io.jmix.core.security.SystemAuthenticator;
+import io.temporal.activity.Activity;
+import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.client.WorkflowClient;
 import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+import io.temporal.failure.ApplicationFailure;
 import io.temporal.spring.boot.ActivityImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 import ru.mindils.jb2.app.dto.GenericTaskQueueDto;
 import ru.mindils.jb2.app.entity.GenericTaskQueue;
 import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 import ru.mindils.jb2.app.mapper.GenericTaskQueueMapper;
+import ru.mindils.jb2.app.repository.GenericTaskQueueRepository;
 import ru.mindils.jb2.app.service.TemporalStatusService;
+import ru.mindils.jb2.app.service.VacancyQueueProcessorWorkflowService;
 import ru.mindils.jb2.app.service.VacancyUpdateWorkflowService;
 import ru.mindils.jb2.app.temporal.VacancyLlmAnalysisConstants;
+import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
 import ru.mindils.jb2.app.temporal.workflow.VacancyLlmFirstAnalysisWorkflow;
 import ru.mindils.jb2.app.temporal.workflow.VacancyLlmFullAnalysisWorkflow;
+import ru.mindils.jb2.app.temporal.workflow.VacancyUpdateWorkflow;
 
-import java.util.Optional;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Component
 @ActivityImpl(taskQueues = "vacancy-queue-processor")
@@ -34,55 +47,93 @@ public class VacancyQueueProcessorActivitiesImpl implements VacancyQueueProcesso
   private final SystemAuthenticator authenticator;
   private final GenericTaskQueueMapper taskQueueMapper;
   private final VacancyUpdateWorkflowService vacancyUpdateWorkflowService;
+  private final GenericTaskQueueRepository genericTaskQueueRepository;
+  private final VacancyQueueProcessorWorkflowService queueProcessorWorkflowService;
 
   public VacancyQueueProcessorActivitiesImpl(DataManager dataManager,
                                              WorkflowClient workflowClient,
                                              SystemAuthenticator authenticator,
                                              GenericTaskQueueMapper taskQueueMapper,
                                              TemporalStatusService temporalStatusService,
-                                             VacancyUpdateWorkflowService vacancyUpdateWorkflowService) {
+                                             VacancyUpdateWorkflowService vacancyUpdateWorkflowService,
+                                             GenericTaskQueueRepository genericTaskQueueRepository,
+                                             VacancyQueueProcessorWorkflowService queueProcessorWorkflowService) {
     this.dataManager = dataManager;
     this.workflowClient = workflowClient;
     this.temporalStatusService = temporalStatusService;
     this.authenticator = authenticator;
     this.taskQueueMapper = taskQueueMapper;
     this.vacancyUpdateWorkflowService = vacancyUpdateWorkflowService;
+    this.genericTaskQueueRepository = genericTaskQueueRepository;
+    this.queueProcessorWorkflowService = queueProcessorWorkflowService;
   }
 
   @Override
-  @Transactional(readOnly = true)
-  public Optional<GenericTaskQueueDto> getNextTask(GenericTaskQueueType queueType) {
-    log.debug("Looking for next {} task in queue", queueType);
+  public List<GenericTaskQueueDto> claimTasks(Map<GenericTaskQueueType, Integer> slotsByType, int limit, String workerId) {
+    log.debug("Claiming up to {} tasks {} for worker {}", limit, slotsByType, workerId);
+
+    Map<GenericTaskQueueType, Integer> weights = new EnumMap<>(GenericTaskQueueType.class);
+    slotsByType.keySet().forEach(type -> weights.put(type, queueProcessorWorkflowService.getWeight(type)));
 
     return authenticator.withSystem(() -> {
-      Optional<GenericTaskQueue> optional = dataManager.load(GenericTaskQueue.class)
+      List<Long> claimedIds = genericTaskQueueRepository.claimBatch(
+          slotsByType,
+          weights,
+          limit,
+          workerId,
+          VacancyQueueProcessorConstants.LEASE_DURATION.toSeconds());
+      if (claimedIds.isEmpty()) {
+        return List.of();
+      }
+
+      List<GenericTaskQueue> tasks = dataManager.load(GenericTaskQueue.class)
           .query("select t from jb2_GenericTaskQueue t " +
-              "where t.taskType = :taskType " +
-              "and t.status = :status " +
+              "where t.id in :ids " +
               "order by t.priority asc, t.createdDate asc")
-          .parameter("taskType", queueType.getId())
-          .parameter("status", GenericTaskQueueStatus.NEW.getId())
-          .maxResults(1)
-          .optional();
-      return optional.map(taskQueueMapper::toDto);
+          .parameter("ids", claimedIds)
+          .list();
+
+      log.debug("Worker {} claimed {} tasks", workerId, tasks.size());
+      return taskQueueMapper.toDtoList(tasks);
     });
   }
 
   @Override
-  @Transactional
-  public void updateTaskStatus(Long taskId, GenericTaskQueueStatus status, String errorMessage) {
+  public Long getSecondsUntilNextAttempt(List<GenericTaskQueueType> types) {
+    return genericTaskQueueRepository.getSecondsUntilNextAttempt(types);
+  }
+
+  @Override
+  public boolean updateTaskStatus(Long taskId, String workerId, GenericTaskQueueStatus status, String errorMessage) {
     log.debug("Updating task {} status to: {}", taskId, status.getId());
 
-    authenticator.runWithSystem(() -> {
-      GenericTaskQueue task = dataManager.load(GenericTaskQueue.class).id(taskId).one();
-      task.setStatus(status);
-      task.setErrorMessage(errorMessage);
-      dataManager.save(task);
-    });
+    if (genericTaskQueueRepository.completeTask(taskId, workerId, status, errorMessage) == 0) {
+      log.warn("Task {} is no longer leased by {}, status {} is not saved", taskId, workerId, status.getId());
+      return false;
+    }
+    return true;
   }
 
   @Override
-  public void executeVacancyFirstAnalysisWorkflow(String vacancyId) {
+  public GenericTaskQueueStatus failTask(Long taskId, String workerId, String errorMessage) {
+    GenericTaskQueueStatus status = genericTaskQueueRepository.scheduleRetry(
+        taskId,
+        workerId,
+        errorMessage,
+        VacancyQueueProcessorConstants.MAX_ATTEMPTS,
+        VacancyQueueProcessorConstants.RETRY_BASE_DELAY.toSeconds(),
+        VacancyQueueProcessorConstants.RETRY_MAX_DELAY.toSeconds());
+
+    if (status == null) {
+      log.warn("Task {} is no longer leased by {}, failure is not saved", taskId, workerId);
+      return null;
+    }
+    log.debug("Task {} failed, new status: {}", taskId, status.getId());
+    return status;
+  }
+
+  @Override
+  public void executeVacancyFirstAnalysisWorkflow(Long taskId, String workerId, String vacancyId) {
     log.info("Starting VacancyLlmFirstAnalysisWorkflow for vacancy: {}", vacancyId);
 
     String workflowId = VacancyLlmAnalysisConstants.WORKFLOW_ID + "_first_" + vacancyId;
@@ -102,12 +153,16 @@ public class VacancyQueueProcessorActivitiesImpl implements VacancyQueueProcesso
               .build()
       );
 
-      // Запускаем workflow синхронно
-      workflow.run(vacancyId, false);
+      // Запускаем workflow и ждем его завершения, продлевая аренду задачи
+      awaitWithLease(taskId, workerId, WorkflowStub.fromTyped(workflow),
+          WorkflowClient.execute(workflow::run, vacancyId, false));
 
       log.info("VacancyLlmFirstAnalysisWorkflow completed successfully for vacancy: {}", vacancyId);
 
     } catch (Exception e) {
+      if (e instanceof ApplicationFailure) {
+        throw e;
+      }
       log.error("Error during VacancyLlmFirstAnalysisWorkflow execution for vacancy {}: {}",
           vacancyId, e.getMessage(), e);
       throw new RuntimeException("First analysis workflow failed: " + e.getMessage(), e);
@@ -115,7 +170,7 @@ public class VacancyQueueProcessorActivitiesImpl implements VacancyQueueProcesso
   }
 
   @Override
-  public void executeVacancyFullAnalysisWorkflow(String vacancyId) {
+  public void executeVacancyFullAnalysisWorkflow(Long taskId, String workerId, String vacancyId) {
     log.info("Starting VacancyLlmFullAnalysisWorkflow for vacancy: {}", vacancyId);
 
     String workflowId = VacancyLlmAnalysisConstants.WORKFLOW_ID + "_full_" + vacancyId;
@@ -135,12 +190,17 @@ public class VacancyQueueProcessorActivitiesImpl implements VacancyQueueProcesso
               .build()
       );
 
-      // Запускаем workflow синхронно (refresh=false, используем существующие данные)
-      workflow.run(vacancyId, false);
+      // Запускаем workflow (refresh=false, используем существующие данные)
+      // и ждем его завершения, продлевая аренду задачи
+      awaitWithLease(taskId, workerId, WorkflowStub.fromTyped(workflow),
+          WorkflowClient.execute(workflow::run, vacancyId, false));
 
       log.info("VacancyLlmFullAnalysisWorkflow completed successfully for vacancy: {}", vacancyId);
 
     } catch (Exception e) {
+      if (e instanceof ApplicationFailure) {
+        throw e;
+      }
       log.error("Error during VacancyLlmFullAnalysisWorkflow execution for vacancy {}: {}",
           vacancyId, e.getMessage(), e);
       throw new RuntimeException("Full analysis workflow failed: " + e.getMessage(), e);
@@ -148,8 +208,58 @@ public class VacancyQueueProcessorActivitiesImpl implements VacancyQueueProcesso
   }
 
   @Override
-  public void executeVacancyUpdateWorkflow(String vacancyId) {
+  public void executeVacancyUpdateWorkflow(Long taskId, String workerId, String vacancyId) {
+    log.info("Starting vacancy update workflow asynchronously for vacancy: {}", vacancyId);
+
     // Используем общий сервис вместо дублирования кода
-    vacancyUpdateWorkflowService.startUpdateWorkflow(vacancyId);
+    VacancyUpdateWorkflow workflow = vacancyUpdateWorkflowService.newWorkflowStub(vacancyId);
+    awaitWithLease(taskId, workerId, WorkflowStub.fromTyped(workflow),
+        WorkflowClient.execute(workflow::updateVacancy, vacancyId));
+  }
+
+  /**
+   * Ждет завершения запущенного workflow. Пока он выполняется, шлет heartbeat в Temporal
+   * и продлевает аренду задачи, чтобы reaper не вернул долгую, но живую задачу в очередь.
+   * Если аренду продлить не удалось (reaper уже вернул задачу и ее мог захватить другой исполнитель),
+   * отменяет workflow, чтобы задача не выполнялась дважды
+   */
+  private void awaitWithLease(Long taskId, String workerId, WorkflowStub workflowStub,
+                              CompletableFuture<Void> execution) {
+    ActivityExecutionContext context = Activity.getExecutionContext();
+    long leaseSeconds = VacancyQueueProcessorConstants.LEASE_DURATION.toSeconds();
+    long heartbeatMillis = VacancyQueueProcessorConstants.LEASE_HEARTBEAT_INTERVAL.toMillis();
+
+    while (true) {
+      try {
+        execution.get(heartbeatMillis, TimeUnit.MILLISECONDS);
+        return;
+      } catch (TimeoutException e) {
+        context.heartbeat(taskId);
+        if (genericTaskQueueRepository.renewLease(taskId, workerId, leaseSeconds) == 0) {
+          log.warn("Lease for task {} was lost by {}, cancelling workflow {}",
+              taskId, workerId, workflowStub.getExecution().getWorkflowId());
+          cancelQuietly(workflowStub);
+          throw ApplicationFailure.newNonRetryableFailure(
+              "Lease for task " + taskId + " was lost", "LeaseLost");
+        }
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof RuntimeException runtimeException
+            ? runtimeException
+            : new RuntimeException(cause.getMessage(), cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancelQuietly(workflowStub);
+        throw new RuntimeException("Interrupted while waiting for task " + taskId, e);
+      }
+    }
+  }
+
+  private void cancelQuietly(WorkflowStub workflowStub) {
+    try {
+      workflowStub.cancel();
+    } catch (Exception e) {
+      log.warn("Failed to cancel workflow {}: {}", workflowStub.getExecution().getWorkflowId(), e.getMessage());
+    }
   }
-}
\ No newline at end of file
+}
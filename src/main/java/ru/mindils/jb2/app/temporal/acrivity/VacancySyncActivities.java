@@ -2,12 +2,22 @@ package ru.mindils.jb2.app.temporal.acrivity;
 
 import io.temporal.activity.ActivityInterface;
 import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
+import ru.mindils.jb2.app.dto.VacancySearchSlice;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
 
 import java.util.List;
 import java.util.Map;
 
 @ActivityInterface
 public interface VacancySyncActivities {
+  /**
+   * Разбиение поиска на части, каждая из которых укладывается в ограничение hh.ru на глубину выдачи
+   * @param requestParams дополнительные параметры запроса (может быть null)
+   * @param syncWindow окно инкрементальной синхронизации (может быть null)
+   * @return части поиска с параметрами запроса
+   */
+  List<VacancySearchSlice> planSearch(List<Map<String, String>> requestParams, VacancySyncWindow syncWindow);
+
   /**
    * Поиск вакансий на указанной странице с пользовательскими параметрами
    * @param page номер страницы (начинается с 0)
@@ -21,4 +31,19 @@ public interface VacancySyncActivities {
    * @param vacancyId ID вакансии
    */
   void saveVacancy(String vacancyId);
+
+  /**
+   * Пакетное сохранение вакансий: детали загружаются параллельно в пределах квоты hh.ru
+   * и сохраняются одной транзакцией; если она не прошла, вакансии сохраняются по одной,
+   * а не сохранившиеся пропускаются с записью в лог
+   * @param vacancyIds ID вакансий (обычно одна страница поиска)
+   * @return количество сохраненных вакансий
+   */
+  int saveVacancies(List<String> vacancyIds);
+
+  /**
+   * Фиксирует успешное завершение инкрементальной синхронизации: сдвигает отметку фильтра
+   * @param syncWindow окно завершенной синхронизации
+   */
+  void completeIncrementalSync(VacancySyncWindow syncWindow);
 }
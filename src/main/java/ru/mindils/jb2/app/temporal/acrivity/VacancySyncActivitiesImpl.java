@@ -6,9 +6,14 @@ import io.temporal.workflow.Workflow;
 import org.slf4j.Logger;
 import org.springframework.stereotype.Component;
 import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
+import ru.mindils.jb2.app.dto.VacancySearchSlice;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
+import ru.mindils.jb2.app.service.VacancySearchPlanner;
+import ru.mindils.jb2.app.service.VacancySyncStateService;
 import ru.mindils.jb2.app.service.VacancySyncService;
 import ru.mindils.jb2.app.temporal.VacancySyncConstants;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -18,15 +23,27 @@ public class VacancySyncActivitiesImpl implements VacancySyncActivities {
   private static final Logger log = Workflow.getLogger(VacancySyncActivitiesImpl.class);
 
   private final VacancySyncService vacancySyncService;
+  private final VacancySyncStateService vacancySyncStateService;
+  private final VacancySearchPlanner vacancySearchPlanner;
   private final SystemAuthenticator authenticator;
 
   public VacancySyncActivitiesImpl(VacancySyncService vacancySyncService,
+                                   VacancySyncStateService vacancySyncStateService,
+                                   VacancySearchPlanner vacancySearchPlanner,
                                    SystemAuthenticator authenticator
   ) {
     this.vacancySyncService = vacancySyncService;
+    this.vacancySyncStateService = vacancySyncStateService;
+    this.vacancySearchPlanner = vacancySearchPlanner;
     this.authenticator = authenticator;
   }
 
+  @Override
+  public List<VacancySearchSlice> planSearch(List<Map<String, String>> requestParams, VacancySyncWindow syncWindow) {
+    log.info("Planning vacancy search for params: {}", requestParams);
+    return authenticator.withSystem(() -> vacancySearchPlanner.plan(requestParams, syncWindow));
+  }
+
   @Override
   public VacancySearchResponseDto searchVacancies(int page, List<Map<String, String>> requestParams) {
     log.info("=== ACTIVITY CALLED: searchVacancies for page: {}, params: {} ===", page, requestParams);
@@ -53,4 +70,55 @@ public class VacancySyncActivitiesImpl implements VacancySyncActivities {
       throw e;
     }
   }
-}
\ No newline at end of file
+
+  @Override
+  public int saveVacancies(List<String> vacancyIds) {
+    log.info("Saving {} vacancies", vacancyIds.size());
+    try {
+      int saved = authenticator.withSystem(() -> savePage(vacancySyncService.fetchVacancyDetails(vacancyIds)));
+      log.info("Successfully saved {} of {} vacancies", saved, vacancyIds.size());
+      return saved;
+    } catch (Exception e) {
+      log.error("Error saving vacancies {}: {}", vacancyIds, e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Сохраняет страницу одной транзакцией, а если она откатилась - каждую вакансию в своей транзакции,
+   * чтобы одна плохая вакансия не мешала сохранить остальные. Пропущенные вакансии попадают в лог;
+   * если не сохранилась ни одна, пробрасывается исходная ошибка, и activity повторяется целиком
+   */
+  private int savePage(List<VacancySyncService.VacancyDetails> details) {
+    try {
+      return vacancySyncService.saveVacancyDetails(details);
+    } catch (RuntimeException batchError) {
+      log.warn("Failed to save page of {} vacancies in one transaction: {}, saving one by one",
+          details.size(), batchError.getMessage());
+
+      int saved = 0;
+      List<String> skippedIds = new ArrayList<>();
+      for (VacancySyncService.VacancyDetails detail : details) {
+        try {
+          saved += vacancySyncService.saveVacancyDetails(List.of(detail));
+        } catch (RuntimeException e) {
+          log.error("Error saving vacancy {}: {}", detail.vacancy().getId(), e.getMessage(), e);
+          skippedIds.add(detail.vacancy().getId());
+        }
+      }
+
+      if (saved == 0) {
+        throw batchError;
+      }
+      if (!skippedIds.isEmpty()) {
+        log.warn("Skipped {} vacancies that could not be saved: {}", skippedIds.size(), skippedIds);
+      }
+      return saved;
+    }
+  }
+
+  @Override
+  public void completeIncrementalSync(VacancySyncWindow syncWindow) {
+    authenticator.runWithSystem(() -> vacancySyncStateService.completeSync(syncWindow));
+  }
+}
@@ -0,0 +1,282 @@
+package ru.mindils.jb2.app.temporal.workflow;
+
+import io.temporal.activity.ActivityOptions;
+import io.temporal.common.RetryOptions;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import org.slf4j.Logger;
+import ru.mindils.jb2.app.dto.GenericTaskQueueDto;
+import ru.mindils.jb2.app.entity.GenericTaskQueueStatus;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+import ru.mindils.jb2.app.temporal.acrivity.VacancyQueueProcessorActivities;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Цикл разбора очереди задач, общий для обработчика одного типа и общего планировщика.
+ * Выполняется внутри workflow: держит до maxInFlight задач одновременно (и не больше лимита на тип),
+ * добирает задачи на освободившиеся слоты и фиксирует результат завершившихся.
+ */
+class QueueProcessingLoop {
+
+  private static final Logger log = Workflow.getLogger(QueueProcessingLoop.class);
+
+  // После стольких событий истории или обработанных задач запуск продолжается новым (continueAsNew),
+  // чтобы долгий разбор очереди не упирался в лимит истории Temporal
+  private static final int MAX_HISTORY_LENGTH = 10_000;
+  private static final int MAX_PROCESSED_PER_RUN = 500;
+
+  // Флаг для остановки процесса
+  private boolean shouldStop = false;
+
+  // В очередь что-то добавили после начала последнего захвата задач
+  private boolean wakeUpRequested = false;
+
+  private final VacancyQueueProcessorActivities activities = Workflow.newActivityStub(
+      VacancyQueueProcessorActivities.class,
+      ActivityOptions.newBuilder()
+          .setRetryOptions(
+              RetryOptions.newBuilder()
+                  .setMaximumAttempts(3)
+                  .setInitialInterval(Duration.ofSeconds(1))
+                  .setMaximumInterval(Duration.ofSeconds(10))
+                  .setBackoffCoefficient(2.0)
+                  .build()
+          )
+          .setStartToCloseTimeout(Duration.ofMinutes(15))
+          .build()
+  );
+
+  // Отдельный stub для запуска дочерних workflow: они могут идти долго, поэтому
+  // ограничиваем не общее время, а паузу между heartbeat'ами (продлением аренды задачи)
+  private final VacancyQueueProcessorActivities executionActivities = Workflow.newActivityStub(
+      VacancyQueueProcessorActivities.class,
+      ActivityOptions.newBuilder()
+          .setRetryOptions(
+              RetryOptions.newBuilder()
+                  .setMaximumAttempts(3)
+                  .setInitialInterval(Duration.ofSeconds(1))
+                  .setMaximumInterval(Duration.ofSeconds(10))
+                  .setBackoffCoefficient(2.0)
+                  .build()
+          )
+          .setStartToCloseTimeout(Duration.ofHours(2))
+          .setHeartbeatTimeout(Duration.ofMinutes(1))
+          .build()
+  );
+
+  void stop() {
+    this.shouldStop = true;
+  }
+
+  void wakeUp() {
+    this.wakeUpRequested = true;
+  }
+
+  /**
+   * Разбирает очередь, пока в ней есть задачи указанных типов (в том числе отложенные до next_attempt_at)
+   * или пока не пришел сигнал остановки. Когда история запуска становится слишком длинной, новые задачи
+   * не берутся: цикл дожидается запущенных и возвращает true - вызывающий продолжает работу новым запуском
+   *
+   * @param name        имя очереди для логов
+   * @param typeLimits  какие типы задач разбирать и сколько задач каждого типа выполнять одновременно
+   * @param maxInFlight сколько задач всех типов выполнять одновременно
+   * @return true, если нужно вызвать Workflow.continueAsNew с теми же параметрами
+   */
+  boolean run(String name, Map<GenericTaskQueueType, Integer> typeLimits, int maxInFlight) {
+    // Идентификатор исполнителя, под которым задачи захватываются из очереди
+    String workerId = Workflow.getInfo().getWorkflowId() + "/" + Workflow.getInfo().getRunId();
+
+    // Задачи, которые выполняются прямо сейчас (порядок вставки важен для детерминизма)
+    Map<Promise<Void>, GenericTaskQueueDto> inFlight = new LinkedHashMap<>();
+
+    // Спать до ближайшего отложенного повтора вместо завершения (в старых запусках этого не было)
+    boolean repollDeferred = Workflow.getVersion(
+        "repoll-deferred-tasks", Workflow.DEFAULT_VERSION, 1) >= 1;
+
+    // Продолжать новым запуском при длинной истории (в старых запусках этого не было)
+    boolean continueAsNewEnabled = Workflow.getVersion(
+        "continue-as-new-on-long-history", Workflow.DEFAULT_VERSION, 1) >= 1;
+
+    int processedCount = 0;
+    int successCount = 0;
+    int failedCount = 0;
+
+    while (true) {
+      // Через сколько секунд станет доступна ближайшая отложенная задача, если слоты остались свободными
+      Long nextAttemptSeconds = null;
+
+      // История выросла: новые задачи не берем, дожидаемся запущенных и продолжаем новым запуском
+      boolean draining = continueAsNewEnabled && !shouldStop
+          && (processedCount >= MAX_PROCESSED_PER_RUN || Workflow.getInfo().getHistoryLength() >= MAX_HISTORY_LENGTH);
+
+      // 1. Добираем задачи из очереди на свободные слоты (после сигнала остановки новые не берем)
+      Map<GenericTaskQueueType, Integer> freeSlots = freeSlots(typeLimits, inFlight);
+      int totalFree = maxInFlight - inFlight.size();
+
+      if (!shouldStop && !draining && totalFree > 0 && !freeSlots.isEmpty()) {
+        wakeUpRequested = false;
+        List<GenericTaskQueueDto> batch = activities.claimTasks(freeSlots, totalFree, workerId);
+
+        for (GenericTaskQueueDto task : batch) {
+          log.info("Processing {} task {} for vacancy: {}", task.getTaskType(), task.getId(), task.getEntityId());
+          // 2. Запускаем соответствующий workflow асинхронно
+          inFlight.put(executeAnalysisWorkflowAsync(task, workerId), task);
+        }
+
+        if (repollDeferred && batch.size() < totalFree) {
+          // NOTIFY о задаче, отложенной до next_attempt_at, приходит раньше, чем ее можно взять,
+          // поэтому к этому моменту нужно проснуться самим
+          nextAttemptSeconds = activities.getSecondsUntilNextAttempt(new ArrayList<>(freeSlots.keySet()));
+        }
+
+        if (batch.isEmpty() && inFlight.isEmpty()) {
+          if (wakeUpRequested) {
+            // Задачи добавили, пока шел захват - проверяем очередь еще раз, а не завершаемся
+            continue;
+          }
+          if (nextAttemptSeconds == null) {
+            log.info("No more NEW tasks in {} queue. Processed: {}, Success: {}, Failed: {}",
+                name, processedCount, successCount, failedCount);
+            break;
+          }
+          log.info("No ready tasks in {} queue, next deferred task in {}s", name, nextAttemptSeconds);
+          Workflow.await(Duration.ofSeconds(nextAttemptSeconds), () -> wakeUpRequested || shouldStop);
+          continue;
+        }
+      }
+
+      if (inFlight.isEmpty() && draining) {
+        log.info("{} queue run history is long ({} events), continuing as new. Processed: {}, Success: {}, Failed: {}",
+            name, Workflow.getInfo().getHistoryLength(), processedCount, successCount, failedCount);
+        return true;
+      }
+
+      if (inFlight.isEmpty()) {
+        // Сюда попадаем только после сигнала остановки, когда все запущенные задачи завершены
+        log.warn("Queue processor stopped by user signal for {}. Processed: {}, Success: {}, Failed: {}",
+            name, processedCount, successCount, failedCount);
+        return false;
+      }
+
+      // 3. Ждем завершения хотя бы одной задачи или появления новых задач при свободных слотах,
+      // а при отложенных задачах - не дольше, чем до ближайшей из них
+      boolean claiming = !draining;
+      Supplier<Boolean> progress = () -> inFlight.keySet().stream().anyMatch(Promise::isCompleted)
+          || (claiming && wakeUpRequested && !shouldStop && inFlight.size() < maxInFlight
+          && !freeSlots(typeLimits, inFlight).isEmpty());
+      if (nextAttemptSeconds == null) {
+        Workflow.await(progress);
+      } else {
+        Workflow.await(Duration.ofSeconds(nextAttemptSeconds), progress);
+      }
+
+      // 4. Фиксируем результат завершившихся задач
+      Iterator<Map.Entry<Promise<Void>, GenericTaskQueueDto>> it = inFlight.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Promise<Void>, GenericTaskQueueDto> entry = it.next();
+        if (!entry.getKey().isCompleted()) {
+          continue;
+        }
+        it.remove();
+
+        GenericTaskQueueDto task = entry.getValue();
+        RuntimeException failure = entry.getKey().getFailure();
+
+        if (failure == null) {
+          log.info("{} task {} completed successfully", task.getTaskType(), task.getId());
+          if (!activities.updateTaskStatus(task.getId(), workerId, GenericTaskQueueStatus.COMPLETED, null)) {
+            log.warn("{} task {} was taken over by another worker, result is not saved",
+                task.getTaskType(), task.getId());
+          }
+          successCount++;
+        } else {
+          log.error("Error processing {} task {}: {}", task.getTaskType(), task.getId(), failure.getMessage());
+
+          String errorMessage = "Workflow error: " + failure.getMessage();
+          if (errorMessage.length() > 1000) {
+            errorMessage = errorMessage.substring(0, 1000) + "...";
+          }
+
+          try {
+            // Задача либо откладывается на повтор с backoff, либо уходит в DEAD
+            GenericTaskQueueStatus newStatus = activities.failTask(task.getId(), workerId, errorMessage);
+            if (newStatus == null) {
+              log.warn("{} task {} was taken over by another worker, failure is not saved",
+                  task.getTaskType(), task.getId());
+            } else if (newStatus == GenericTaskQueueStatus.DEAD) {
+              log.warn("{} task {} exhausted retry attempts and moved to DEAD", task.getTaskType(), task.getId());
+            }
+          } catch (Exception saveError) {
+            log.error("Failed to save error status for task {}: {}", task.getId(), saveError.getMessage());
+          }
+          failedCount++;
+        }
+
+        processedCount++;
+      }
+    }
+
+    log.info("{} queue processing completed. Total: {}, Success: {}, Failed: {}",
+        name, processedCount, successCount, failedCount);
+    return false;
+  }
+
+  /**
+   * Сколько еще задач каждого типа можно запустить (типы без свободных слотов не попадают в результат)
+   */
+  private Map<GenericTaskQueueType, Integer> freeSlots(Map<GenericTaskQueueType, Integer> typeLimits,
+                                                       Map<Promise<Void>, GenericTaskQueueDto> inFlight) {
+    Map<GenericTaskQueueType, Integer> running = new EnumMap<>(GenericTaskQueueType.class);
+    for (GenericTaskQueueDto task : inFlight.values()) {
+      running.merge(GenericTaskQueueType.fromId(task.getTaskType()), 1, Integer::sum);
+    }
+
+    Map<GenericTaskQueueType, Integer> free = new EnumMap<>(GenericTaskQueueType.class);
+    typeLimits.forEach((type, limit) -> {
+      int slots = Math.max(1, limit) - running.getOrDefault(type, 0);
+      if (slots > 0) {
+        free.put(type, slots);
+      }
+    });
+    return free;
+  }
+
+  /**
+   * Асинхронно запускает соответствующий analysis workflow в зависимости от типа задачи
+   */
+  private Promise<Void> executeAnalysisWorkflowAsync(GenericTaskQueueDto task, String workerId) {
+    GenericTaskQueueType queueType = GenericTaskQueueType.fromId(task.getTaskType());
+    Long taskId = task.getId();
+    String vacancyId = task.getEntityId();
+
+    if (queueType == null) {
+      throw new IllegalArgumentException("Unsupported queue type: " + task.getTaskType());
+    }
+
+    switch (queueType) {
+      case LLM_FIRST:
+        log.info("Executing FIRST analysis workflow for vacancy: {}", vacancyId);
+        return Async.procedure(executionActivities::executeVacancyFirstAnalysisWorkflow, taskId, workerId, vacancyId);
+
+      case LLM_FULL:
+        log.info("Executing FULL analysis workflow for vacancy: {}", vacancyId);
+        return Async.procedure(executionActivities::executeVacancyFullAnalysisWorkflow, taskId, workerId, vacancyId);
+
+      case VACANCY_UPDATE:
+        log.info("Executing VACANCY UPDATE workflow for vacancy: {}", vacancyId);
+        return Async.procedure(executionActivities::executeVacancyUpdateWorkflow, taskId, workerId, vacancyId);
+
+      default:
+        throw new IllegalArgumentException("Unsupported queue type: " + queueType);
+    }
+  }
+}
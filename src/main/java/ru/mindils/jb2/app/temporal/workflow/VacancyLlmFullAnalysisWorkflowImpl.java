@@ -3,6 +3,8 @@ package ru.mindils.jb2.app.temporal.workflow;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.spring.boot.WorkflowImpl;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import org.slf4j.Logger;
 import ru.mindils.jb2.app.dto.LlmAnalysisResponse;
@@ -12,7 +14,11 @@ import ru.mindils.jb2.app.temporal.VacancyLlmAnalysisConstants;
 import ru.mindils.jb2.app.temporal.acrivity.VacancyLllAnalysisActivities;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static ru.mindils.jb2.app.entity.VacancyLlmAnalysisType.BENEFITS;
@@ -42,6 +48,9 @@ public class VacancyLlmFullAnalysisWorkflowImpl implements VacancyLlmFullAnalysi
       INDUSTRY          // Отрасль
   );
 
+  // Версия для запусков, начатых до параллельного анализа: оставшиеся типы у них доигрываются по очереди
+  private static final String PARALLEL_ANALYSIS_CHANGE = "parallel-analysis";
+
   private final VacancyLllAnalysisActivities activities =
       Workflow.newActivityStub(VacancyLllAnalysisActivities.class,
           ActivityOptions.newBuilder()
@@ -56,6 +65,24 @@ public class VacancyLlmFullAnalysisWorkflowImpl implements VacancyLlmFullAnalysi
               .setStartToCloseTimeout(Duration.ofMinutes(3))
               .build());
 
+  /**
+   * Комбинированный запрос отвечает сразу за несколько типов, поэтому дольше обычного;
+   * при повторной ошибке типы анализируются по отдельности, так что попыток меньше
+   */
+  private final VacancyLllAnalysisActivities combinedActivities =
+      Workflow.newActivityStub(VacancyLllAnalysisActivities.class,
+          ActivityOptions.newBuilder()
+              .setRetryOptions(
+                  RetryOptions.newBuilder()
+                      .setMaximumAttempts(2)
+                      .setInitialInterval(Duration.ofSeconds(1))
+                      .setMaximumInterval(Duration.ofSeconds(10))
+                      .setBackoffCoefficient(2.0)
+                      .build()
+              )
+              .setStartToCloseTimeout(Duration.ofMinutes(10))
+              .build());
+
   @Override
   public void run(String vacancyId, Boolean refresh) {
     if (vacancyId == null || vacancyId.trim().isEmpty()) {
@@ -110,23 +137,42 @@ public class VacancyLlmFullAnalysisWorkflowImpl implements VacancyLlmFullAnalysi
       // === ОСТАЛЬНЫЕ ТИПЫ АНАЛИЗА ===
       List<VacancyLlmAnalysisType> remainingTypes = ANALYSIS_TYPES_AFTER_JAVA.subList(1, ANALYSIS_TYPES_AFTER_JAVA.size());
 
-      for (int i = 0; i < remainingTypes.size(); i++) {
-        VacancyLlmAnalysisType analysisType = remainingTypes.get(i);
-        int currentStep = i + 3; // +2 для JAVA_PRIMARY и STOP_FACTORS
-
-        log.info("Step {}/{}: Processing {} analysis for vacancy: {}",
-            currentStep, totalSteps, analysisType, vacancyId);
+      if (Workflow.getVersion(PARALLEL_ANALYSIS_CHANGE, Workflow.DEFAULT_VERSION, 1) == Workflow.DEFAULT_VERSION) {
+        successCount += analyzeSequentially(vacancyId, remainingTypes, refresh);
+        logFinalResult(vacancyId, successCount, totalSteps, "COMPLETED");
+        log.info("FULL ANALYSIS WORKFLOW COMPLETED for vacancy: {}", vacancyId);
+        return;
+      }
 
-        try {
-          analyzeStep(vacancyId, analysisType, refresh);
-          successCount++;
-          log.info("Step {}/{}: {} analysis completed successfully", currentStep, totalSteps, analysisType);
+      // В комбинированном режиме сначала один общий запрос, по отдельности - только не прошедшие проверку разделы
+      if (activities.isCombinedAnalysisEnabled()) {
+        List<VacancyLlmAnalysisType> failedTypes = analyzeCombinedStep(vacancyId, remainingTypes, refresh);
+        successCount += remainingTypes.size() - failedTypes.size();
+        remainingTypes = failedTypes;
+      }
 
-        } catch (Exception e) {
-          log.error("Step {}/{}: {} analysis FAILED for vacancy {}: {}",
-              currentStep, totalSteps, analysisType, vacancyId, e.getMessage());
+      // Типы не зависят друг от друга, поэтому выполняются параллельно (не больше parallelism одновременно)
+      int parallelism = Math.max(1, activities.getAnalysisParallelism());
+      log.info("Steps 3-{}/{}: Running {} analysis types for vacancy {} with parallelism {}",
+          totalSteps, totalSteps, remainingTypes.size(), vacancyId, parallelism);
+
+      Deque<VacancyLlmAnalysisType> pending = new ArrayDeque<>(remainingTypes);
+      List<Promise<Boolean>> running = new ArrayList<>();
+      List<Promise<Boolean>> all = new ArrayList<>();
+      while (!pending.isEmpty() || !running.isEmpty()) {
+        while (!pending.isEmpty() && running.size() < parallelism) {
+          Promise<Boolean> step = Async.function(this::analyzeRemainingStep, vacancyId, pending.poll(), refresh);
+          running.add(step);
+          all.add(step);
+        }
+        Promise.anyOf(running).get();
+        running.removeIf(Promise::isCompleted);
+      }
+      Promise.allOf(all).get();
 
-          activities.saveAnalysisStatus(vacancyId, analysisType, VacancyLlmAnalysisStatus.ERROR);
+      for (Promise<Boolean> step : all) {
+        if (step.get()) {
+          successCount++;
         }
       }
 
@@ -140,6 +186,89 @@ public class VacancyLlmFullAnalysisWorkflowImpl implements VacancyLlmFullAnalysi
     }
   }
 
+  /**
+   * Выполняет комбинированный анализ типов, для которых нет актуального результата (или всех при refresh),
+   * и сохраняет прошедшие проверку разделы. Ошибка общего запроса не прерывает workflow
+   *
+   * @return типы, которые нужно проанализировать по отдельности
+   */
+  private List<VacancyLlmAnalysisType> analyzeCombinedStep(String vacancyId,
+                                                           List<VacancyLlmAnalysisType> types,
+                                                           Boolean refresh) {
+    List<VacancyLlmAnalysisType> pending = new ArrayList<>();
+    for (VacancyLlmAnalysisType type : types) {
+      if (Boolean.TRUE.equals(refresh) || !activities.hasExistingAnalysis(vacancyId, type)) {
+        pending.add(type);
+      }
+    }
+    // Одному разделу общий запрос ничего не экономит
+    if (pending.size() < 2) {
+      return pending;
+    }
+
+    log.info("Running combined analysis of {} for vacancy: {}", pending, vacancyId);
+    Map<VacancyLlmAnalysisType, LlmAnalysisResponse> sections;
+    try {
+      sections = combinedActivities.analyzeCombined(vacancyId, pending);
+    } catch (Exception e) {
+      log.warn("Combined analysis FAILED for vacancy {}: {} - falling back to per-type analysis",
+          vacancyId, e.getMessage());
+      return pending;
+    }
+
+    List<VacancyLlmAnalysisType> failed = new ArrayList<>();
+    for (VacancyLlmAnalysisType type : pending) {
+      LlmAnalysisResponse section = sections.get(type);
+      if (section == null) {
+        failed.add(type);
+      } else {
+        activities.saveAnalysisResult(vacancyId, type, section);
+      }
+    }
+
+    if (!failed.isEmpty()) {
+      log.warn("Combined analysis for vacancy {} did not cover {} - falling back to per-type analysis",
+          vacancyId, failed);
+    }
+    return failed;
+  }
+
+  /**
+   * Прежний порядок: типы анализируются по одному.
+   * Оставлен только для воспроизведения истории запусков, начатых до параллельного анализа
+   *
+   * @return число успешно выполненных типов
+   */
+  private int analyzeSequentially(String vacancyId, List<VacancyLlmAnalysisType> types, Boolean refresh) {
+    int successCount = 0;
+    for (VacancyLlmAnalysisType analysisType : types) {
+      if (analyzeRemainingStep(vacancyId, analysisType, refresh)) {
+        successCount++;
+      }
+    }
+    return successCount;
+  }
+
+  /**
+   * Выполняет один из независимых типов анализа. Ошибка не прерывает workflow:
+   * тип получает статус ERROR, остальные типы продолжают выполняться
+   *
+   * @return true, если анализ выполнен успешно
+   */
+  private boolean analyzeRemainingStep(String vacancyId, VacancyLlmAnalysisType analysisType, Boolean refresh) {
+    try {
+      analyzeStep(vacancyId, analysisType, refresh);
+      log.info("{} analysis completed successfully for vacancy: {}", analysisType, vacancyId);
+      return true;
+
+    } catch (Exception e) {
+      log.error("{} analysis FAILED for vacancy {}: {}", analysisType, vacancyId, e.getMessage());
+
+      activities.saveAnalysisStatus(vacancyId, analysisType, VacancyLlmAnalysisStatus.ERROR);
+      return false;
+    }
+  }
+
   /**
    * Выполняет один шаг анализа с учетом параметра refresh
    */
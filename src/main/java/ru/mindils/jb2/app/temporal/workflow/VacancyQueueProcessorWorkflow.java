@@ -5,12 +5,25 @@ import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
 import ru.mindils.jb2.app.entity.GenericTaskQueueType;
 
+/**
+ * @deprecated очередь разбирает только {@link VacancyQueueSchedulerWorkflow}
+ */
+@Deprecated
 @WorkflowInterface
 public interface VacancyQueueProcessorWorkflow {
 
+  /**
+   * Обрабатывает очередь указанного типа, выполняя одновременно до concurrency задач
+   */
   @WorkflowMethod
-  void processQueue(GenericTaskQueueType queueType);
+  void processQueue(GenericTaskQueueType queueType, int concurrency);
 
   @SignalMethod
   void stop();
+
+  /**
+   * В очередь добавлены новые задачи: обработчик перепроверит очередь перед завершением
+   */
+  @SignalMethod
+  void wakeUp();
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package ru.mindils.jb2.app.temporal.workflow;
+
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+
+import java.util.Map;
+
+@WorkflowInterface
+public interface VacancyQueueSchedulerWorkflow {
+
+  /**
+   * Разбирает очередь всех типов задач одновременно: до concurrency задач всего
+   * и до typeLimits задач каждого типа, слоты делятся между типами по весам
+   */
+  @WorkflowMethod
+  void schedule(int concurrency, Map<GenericTaskQueueType, Integer> typeLimits);
+
+  @SignalMethod
+  void stop();
+
+  /**
+   * В очередь добавлены новые задачи: планировщик перепроверит очередь перед завершением
+   */
+  @SignalMethod
+  void wakeUp();
+}
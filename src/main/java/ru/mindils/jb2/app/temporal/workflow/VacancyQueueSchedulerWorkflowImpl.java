@@ -0,0 +1,50 @@
+package ru.mindils.jb2.app.temporal.workflow;
+
+import io.temporal.spring.boot.WorkflowImpl;
+import io.temporal.workflow.Workflow;
+import org.slf4j.Logger;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+import ru.mindils.jb2.app.temporal.VacancyQueueProcessorConstants;
+
+import java.util.Map;
+
+@WorkflowImpl(taskQueues = VacancyQueueProcessorConstants.QUEUE)
+public class VacancyQueueSchedulerWorkflowImpl implements VacancyQueueSchedulerWorkflow {
+
+  private static final Logger log = Workflow.getLogger(VacancyQueueSchedulerWorkflowImpl.class);
+
+  private final QueueProcessingLoop loop = new QueueProcessingLoop();
+
+  @Override
+  public void stop() {
+    log.info("Received stop signal for queue scheduler workflow");
+    loop.stop();
+  }
+
+  @Override
+  public void wakeUp() {
+    loop.wakeUp();
+  }
+
+  @Override
+  public void schedule(int concurrency, Map<GenericTaskQueueType, Integer> typeLimits) {
+    if (typeLimits == null || typeLimits.isEmpty()) {
+      throw new IllegalArgumentException("typeLimits cannot be empty");
+    }
+
+    int maxInFlight = Math.max(1, concurrency);
+    log.info("Starting vacancy queue scheduler workflow (concurrency: {}, type limits: {})", maxInFlight, typeLimits);
+
+    boolean continueAsNew;
+    try {
+      continueAsNew = loop.run("scheduler", typeLimits, maxInFlight);
+    } catch (Exception e) {
+      log.error("Queue scheduler workflow failed: {}", e.getMessage(), e);
+      throw e;
+    }
+
+    if (continueAsNew) {
+      Workflow.continueAsNew(concurrency, typeLimits);
+    }
+  }
+}
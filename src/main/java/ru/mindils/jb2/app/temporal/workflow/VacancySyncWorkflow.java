@@ -3,14 +3,21 @@ package ru.mindils.jb2.app.temporal.workflow;
 import io.temporal.workflow.SignalMethod;
 import io.temporal.workflow.WorkflowInterface;
 import io.temporal.workflow.WorkflowMethod;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
 
 import java.util.List;
 import java.util.Map;
 
 @WorkflowInterface
 public interface VacancySyncWorkflow {
+  /**
+   * @param requestParams параметры поиска
+   * @param syncWindow    окно инкрементальной синхронизации; после успешного завершения отметка фильтра
+   *                      сдвигается на начало окна. null - разовая синхронизация без отметки
+   *                      (в том числе у запусков, начатых до появления параметра)
+   */
   @WorkflowMethod
-  void run(List<Map<String, String>> requestParams);
+  void run(List<Map<String, String>> requestParams, VacancySyncWindow syncWindow);
 
   @SignalMethod
   void stop();
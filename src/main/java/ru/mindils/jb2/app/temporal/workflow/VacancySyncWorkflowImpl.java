@@ -3,14 +3,21 @@ package ru.mindils.jb2.app.temporal.workflow;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.spring.boot.WorkflowImpl;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
 import io.temporal.workflow.Workflow;
 import org.slf4j.Logger;
 import ru.mindils.jb2.app.dto.VacancySearchResponseDto;
+import ru.mindils.jb2.app.dto.VacancySearchSlice;
+import ru.mindils.jb2.app.dto.VacancySyncWindow;
 import ru.mindils.jb2.app.dto.VacancyShortDto;
 import ru.mindils.jb2.app.temporal.VacancySyncConstants;
 import ru.mindils.jb2.app.temporal.acrivity.VacancySyncActivities;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -18,9 +25,20 @@ import java.util.Map;
 public class VacancySyncWorkflowImpl implements VacancySyncWorkflow {
   private static final Logger log = Workflow.getLogger(VacancySyncWorkflowImpl.class);
 
+  // Сколько частей поиска обходится одновременно (общую частоту запросов ограничивает квота hh.ru)
+  private static final int SLICE_CONCURRENCY = 4;
+
+  // Версия для запусков, начатых до разбиения поиска на части: они доигрываются прежним постраничным обходом
+  private static final String SLICED_SEARCH_CHANGE = "sliced-search";
+
   // Флаг для остановки процесса
   private boolean shouldStop = false;
 
+  // Общий прогресс по всем частям поиска
+  private int processedPages = 0;
+  private int totalProcessed = 0;
+  private int failedPages = 0;
+
   private final VacancySyncActivities activities = Workflow.newActivityStub(VacancySyncActivities.class,
       ActivityOptions.newBuilder()
           .setRetryOptions(
@@ -31,6 +49,17 @@ public class VacancySyncWorkflowImpl implements VacancySyncWorkflow {
           .setStartToCloseTimeout(Duration.ofMinutes(2))
           .build());
 
+  // Пакетное сохранение страницы: время ограничено квотой hh.ru на загрузку деталей, а не одним запросом
+  private final VacancySyncActivities bulkActivities = Workflow.newActivityStub(VacancySyncActivities.class,
+      ActivityOptions.newBuilder()
+          .setRetryOptions(
+              RetryOptions.newBuilder()
+                  .setMaximumAttempts(3)
+                  .build()
+          )
+          .setStartToCloseTimeout(Duration.ofMinutes(15))
+          .build());
+
   @Override
   public void stop() {
     log.info("Received stop signal for vacancy synchronization workflow");
@@ -38,12 +67,122 @@ public class VacancySyncWorkflowImpl implements VacancySyncWorkflow {
   }
 
   @Override
-  public void run(List<Map<String, String>> requestParams) {
+  public void run(List<Map<String, String>> requestParams, VacancySyncWindow syncWindow) {
     log.info("Starting vacancy synchronization workflow with custom params: {}", requestParams);
 
+    if (Workflow.getVersion(SLICED_SEARCH_CHANGE, Workflow.DEFAULT_VERSION, 1) == Workflow.DEFAULT_VERSION) {
+      runSequential(requestParams);
+      return;
+    }
+
+    try {
+      // Разбиваем поиск на части, которые hh.ru отдает целиком, и обходим их параллельно
+      List<VacancySearchSlice> slices = bulkActivities.planSearch(requestParams, syncWindow);
+      int totalVacancies = slices.stream().mapToInt(VacancySearchSlice::getFound).sum();
+      log.info("Search split into {} slices, total vacancies found: {}", slices.size(), totalVacancies);
+
+      if (slices.isEmpty()) {
+        log.warn("No vacancies found to process");
+        completeIncrementalSync(syncWindow);
+        return;
+      }
+
+      Deque<VacancySearchSlice> pending = new ArrayDeque<>(slices);
+      List<Promise<Void>> running = new ArrayList<>();
+      while (!pending.isEmpty() || !running.isEmpty()) {
+        while (!shouldStop && !pending.isEmpty() && running.size() < SLICE_CONCURRENCY) {
+          running.add(Async.procedure(this::syncSlice, pending.poll()));
+        }
+        if (running.isEmpty()) {
+          break;
+        }
+        Promise.anyOf(running).get();
+        running.removeIf(Promise::isCompleted);
+      }
+
+      if (shouldStop) {
+        log.warn("Vacancy synchronization stopped by user signal. Processed {} pages, {} vacancies",
+            processedPages, totalProcessed);
+        return;
+      }
+
+      log.info("Vacancy synchronization completed successfully. " +
+          "Total pages processed: {}, total vacancies processed: {}", processedPages, totalProcessed);
+
+      // Если часть страниц не сохранилась, отметку не сдвигаем - следующий запуск повторит окно
+      if (failedPages == 0) {
+        completeIncrementalSync(syncWindow);
+      } else {
+        log.warn("{} pages failed, incremental sync watermark is not moved", failedPages);
+      }
+    } catch (Exception e) {
+      log.error("Vacancy synchronization failed: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Постранично сохраняет одну часть поиска. Ошибки учитываются в failedPages и не прерывают остальные части.
+   * Первая страница обычно уже загружена планировщиком, тогда запросы начинаются со второй
+   */
+  private void syncSlice(VacancySearchSlice slice) {
+    List<Map<String, String>> sliceParams = slice.getRequestParams();
+    int currentPage = 0;
+
+    try {
+      List<String> vacancyIds;
+      int totalPages;
+      if (slice.getFirstPageIds() != null) {
+        vacancyIds = slice.getFirstPageIds();
+        totalPages = slice.getPages();
+      } else {
+        // Часть спланирована до того, как планировщик стал отдавать первую страницу
+        VacancySearchResponseDto response = activities.searchVacancies(currentPage, sliceParams);
+        vacancyIds = idsOf(response);
+        totalPages = response.getPages() != null ? response.getPages() : 0;
+      }
+
+      while (totalPages > 0 && !vacancyIds.isEmpty()) {
+        // Проверяем флаг остановки
+        if (shouldStop) {
+          log.warn("Slice {} stopped by user signal at page {}/{}", sliceParams, currentPage, totalPages);
+          return;
+        }
+
+        // Следующую страницу ищем, пока сохраняется текущая: оба запроса укладываются в общую квоту hh.ru
+        Promise<VacancySearchResponseDto> nextPage = currentPage + 1 < totalPages
+            ? Async.function(activities::searchVacancies, currentPage + 1, sliceParams)
+            : null;
+
+        try {
+          totalProcessed += bulkActivities.saveVacancies(vacancyIds);
+        } catch (Exception e) {
+          log.error("Failed to process page {} of slice {}: {}", currentPage, sliceParams, e.getMessage());
+          failedPages++;
+        }
+
+        currentPage++;
+        processedPages++;
+        log.info("Processed page {}/{} of slice, vacancies processed: {}", currentPage, totalPages, totalProcessed);
+
+        if (nextPage == null) {
+          break;
+        }
+        vacancyIds = idsOf(nextPage.get());
+      }
+    } catch (Exception e) {
+      log.error("Failed to search page {} of slice {}: {}", currentPage, sliceParams, e.getMessage());
+      failedPages++;
+    }
+  }
+
+  /**
+   * Прежний обход: страницы по очереди, вакансии сохраняются по одной.
+   * Оставлен только для воспроизведения истории запусков, начатых до разбиения поиска на части
+   */
+  private void runSequential(List<Map<String, String>> requestParams) {
     int currentPage = 0;
     int totalPages = 0;
-    int totalProcessed = 0;
     int totalVacancies = 0;
 
     try {
@@ -89,9 +228,7 @@ public class VacancySyncWorkflowImpl implements VacancySyncWorkflow {
         }
 
         currentPage++;
-        double progress = (double) currentPage / totalPages * 100;
-        log.info("Processed page {}/{} ({:.1f}%), vacancies processed: {}",
-            currentPage, totalPages, progress, totalProcessed);
+        log.info("Processed page {}/{}, vacancies processed: {}", currentPage, totalPages, totalProcessed);
 
         if (currentPage < totalPages) {
           Workflow.sleep(Duration.ofSeconds(1));
@@ -105,4 +242,16 @@ public class VacancySyncWorkflowImpl implements VacancySyncWorkflow {
       throw e;
     }
   }
-}
\ No newline at end of file
+
+  private List<String> idsOf(VacancySearchResponseDto response) {
+    return response.getItems().stream()
+        .map(VacancyShortDto::getId)
+        .toList();
+  }
+
+  private void completeIncrementalSync(VacancySyncWindow syncWindow) {
+    if (syncWindow != null) {
+      activities.completeIncrementalSync(syncWindow);
+    }
+  }
+}
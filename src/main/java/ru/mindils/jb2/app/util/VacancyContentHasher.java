@@ -0,0 +1,83 @@
+package ru.mindils.jb2.app.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Хэш содержимого вакансии, которое попадает в LLM-анализ: описание, брендированное описание и ключевые навыки.
+ * Перед хэшированием текст нормализуется (без HTML-разметки, в нижнем регистре, с одиночными пробелами),
+ * а навыки сортируются, поэтому правки верстки и порядка навыков не считаются изменением
+ */
+@Component
+public class VacancyContentHasher {
+
+  private static final Pattern HTML_TAG = Pattern.compile("<[^>]*>");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  // Разделитель частей, который не может встретиться в нормализованном тексте
+  private static final char SEPARATOR = '\u0000';
+
+  /**
+   * SHA-256 нормализованного содержимого в hex (64 символа)
+   *
+   * @param keySkills ключевые навыки в формате hh.ru (массив объектов с полем name)
+   */
+  public String hash(String description, String brandedDescription, JsonNode keySkills) {
+    List<String> skillNames = keySkills == null || !keySkills.isArray()
+        ? List.of()
+        : StreamSupport.stream(keySkills.spliterator(), false)
+            .map(node -> node.path("name").asText())
+            .toList();
+    return hash(description, brandedDescription, skillNames);
+  }
+
+  /**
+   * SHA-256 нормализованного содержимого в hex (64 символа)
+   *
+   * @param keySkillNames названия ключевых навыков
+   */
+  public String hash(String description, String brandedDescription, Collection<String> keySkillNames) {
+    String content = normalizeText(description)
+        + SEPARATOR + normalizeText(brandedDescription)
+        + SEPARATOR + normalizeKeySkills(keySkillNames);
+
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(md.digest(content.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not available", e);
+    }
+  }
+
+  private String normalizeText(String text) {
+    if (text == null) {
+      return "";
+    }
+    String plain = HTML_TAG.matcher(text).replaceAll(" ")
+        .replace("&nbsp;", " ");
+    return WHITESPACE.matcher(plain).replaceAll(" ").trim().toLowerCase(Locale.ROOT);
+  }
+
+  private String normalizeKeySkills(Collection<String> keySkillNames) {
+    if (keySkillNames == null) {
+      return "";
+    }
+    return keySkillNames.stream()
+        .map(this::normalizeText)
+        .filter(name -> !name.isEmpty())
+        .sorted()
+        .distinct()
+        .collect(Collectors.joining(","));
+  }
+}
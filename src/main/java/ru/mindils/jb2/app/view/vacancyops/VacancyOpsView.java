@@ -2,6 +2,7 @@ package ru.mindils.jb2.app.view.vacancyops;
 
 import com.vaadin.flow.component.ClickEvent;
 import com.vaadin.flow.component.html.H3;
+import com.vaadin.flow.component.html.Paragraph;
 import com.vaadin.flow.component.textfield.TextField;
 import com.vaadin.flow.router.Route;
 import io.jmix.flowui.Notifications;
@@ -10,12 +11,17 @@ import io.jmix.flowui.model.CollectionContainer;
 import io.jmix.flowui.model.CollectionLoader;
 import io.jmix.flowui.view.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import ru.mindils.jb2.app.dto.TaskQueueStats;
 import ru.mindils.jb2.app.dto.WorkflowInfo;
+import ru.mindils.jb2.app.entity.GenericTaskQueueType;
+import ru.mindils.jb2.app.service.GenericTaskQueueHistoryService;
+import ru.mindils.jb2.app.service.GenericTaskQueueService;
 import ru.mindils.jb2.app.service.TemporalStatusService;
 import ru.mindils.jb2.app.service.VacancyWorkflowService;
 import ru.mindils.jb2.app.view.main.MainView;
 
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
 @Route(value = "vacancy-ops-view", layout = MainView.class)
@@ -30,6 +36,12 @@ public class VacancyOpsView extends StandardView {
   @Autowired
   private TemporalStatusService temporalStatusService;
 
+  @Autowired
+  private GenericTaskQueueService genericTaskQueueService;
+
+  @Autowired
+  private GenericTaskQueueHistoryService genericTaskQueueHistoryService;
+
   @Autowired
   private Notifications notifications;
 
@@ -37,6 +49,13 @@ public class VacancyOpsView extends StandardView {
 
   @ViewComponent private H3 workflowStatusHeader;
 
+  @ViewComponent private Paragraph updateQueueCountText;
+  @ViewComponent private Paragraph updateQueueRetryText;
+  @ViewComponent private Paragraph primaryQueueCountText;
+  @ViewComponent private Paragraph primaryQueueRetryText;
+  @ViewComponent private Paragraph fullQueueCountText;
+  @ViewComponent private Paragraph fullQueueRetryText;
+
   @ViewComponent
   private CollectionLoader<WorkflowInfo> workflowInfosDl;
 
@@ -81,6 +100,18 @@ public class VacancyOpsView extends StandardView {
   }
 
   private void refreshStats() {
+    showQueueStats(GenericTaskQueueType.VACANCY_UPDATE, updateQueueCountText, updateQueueRetryText);
+    showQueueStats(GenericTaskQueueType.LLM_FIRST, primaryQueueCountText, primaryQueueRetryText);
+    showQueueStats(GenericTaskQueueType.LLM_FULL, fullQueueCountText, fullQueueRetryText);
+  }
+
+  private void showQueueStats(GenericTaskQueueType queueType, Paragraph countText, Paragraph retryText) {
+    TaskQueueStats stats = genericTaskQueueService.getStatsForTaskType(queueType);
+    long completedLastDay = genericTaskQueueHistoryService.getCompletedSince(
+        queueType, OffsetDateTime.now().minusDays(1));
+    countText.setText(String.valueOf(stats.getNewTasks()));
+    retryText.setText("Ждут повтора: %d · В работе: %d · DEAD: %d · Готово за сутки: %d".formatted(
+        stats.getRetryingTasks(), stats.getProcessingTasks(), stats.getDeadTasks(), completedLastDay));
   }
 
   private void updateWorkflowsHeader() {
@@ -0,0 +1,183 @@
+package ru.mindils.jb2.app.integration.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пропускная способность JsonHttpClient на локальной заглушке hh.ru: последовательная загрузка
+ * без сжатия (как до настройки клиента), параллельная загрузка и параллельная загрузка с gzip.
+ * Заглушка отвечает с задержкой сети (STUB_LATENCY) и ограниченной шириной канала (STUB_BYTES_PER_MS),
+ * иначе на localhost сжатие ничего не дает. Встроенный HttpServer работает только по HTTP/1.1,
+ * поэтому выигрыш мультиплексирования HTTP/2 здесь не измеряется.
+ * <p>
+ * Запуск: JB2_BENCHMARK=true ./gradlew test --tests '*JsonHttpClientBenchmarkTest'
+ */
+@EnabledIfEnvironmentVariable(named = "JB2_BENCHMARK", matches = "true")
+public class JsonHttpClientBenchmarkTest {
+
+  private static final int REQUESTS = 200;
+  private static final int WARMUP_REQUESTS = 20;
+  private static final int CONCURRENCY = 4;
+
+  private static final Duration STUB_LATENCY = Duration.ofMillis(20);
+  // ~64 Мбит/с
+  private static final int STUB_BYTES_PER_MS = 8 * 1024;
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private ExecutorService clientExecutor;
+  private ExecutorService fetchExecutor;
+
+  private byte[] plainBody;
+  private byte[] gzipBody;
+  private final AtomicLong bytesSent = new AtomicLong();
+
+  @BeforeEach
+  void startStub() throws IOException {
+    plainBody = vacancyJson().getBytes(StandardCharsets.UTF_8);
+    gzipBody = gzip(plainBody);
+
+    serverExecutor = Executors.newFixedThreadPool(CONCURRENCY * 2);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/vacancies/", this::handleVacancy);
+    server.setExecutor(serverExecutor);
+    server.start();
+
+    clientExecutor = Executors.newFixedThreadPool(CONCURRENCY);
+    fetchExecutor = Executors.newFixedThreadPool(CONCURRENCY);
+  }
+
+  @AfterEach
+  void stopStub() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    clientExecutor.shutdownNow();
+    fetchExecutor.shutdownNow();
+  }
+
+  @Test
+  void compareThroughput() throws Exception {
+    Result sequential = measure("sequential, identity", newClient(false), 1);
+    Result concurrent = measure("concurrent, identity", newClient(false), CONCURRENCY);
+    Result compressed = measure("concurrent, gzip", newClient(true), CONCURRENCY);
+
+    assertThat(compressed.bytes()).isLessThan(concurrent.bytes());
+    assertThat(concurrent.requestsPerSecond()).isGreaterThan(sequential.requestsPerSecond());
+  }
+
+  private Result measure(String name, JsonHttpClient client, int concurrency) throws Exception {
+    run(client, concurrency, WARMUP_REQUESTS);
+
+    bytesSent.set(0);
+    long start = System.nanoTime();
+    run(client, concurrency, REQUESTS);
+    long elapsedNanos = System.nanoTime() - start;
+
+    Result result = new Result(REQUESTS * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos, bytesSent.get());
+    System.out.printf("%-22s %8.1f req/s, %8d KB transferred%n", name, result.requestsPerSecond(), result.bytes() / 1024);
+    return result;
+  }
+
+  private void run(JsonHttpClient client, int concurrency, int requests) throws Exception {
+    ExecutorService executor = concurrency > 1 ? fetchExecutor : Executors.newSingleThreadExecutor();
+    try {
+      List<Future<HttpResult<JsonNode>>> futures = new ArrayList<>(requests);
+      for (int i = 0; i < requests; i++) {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/vacancies/" + i);
+        futures.add(executor.submit(() -> client.retrieve(uri, JsonNode.class)));
+      }
+      for (Future<HttpResult<JsonNode>> future : futures) {
+        assertThat(future.get().data().path("description").asText()).isNotEmpty();
+      }
+    } finally {
+      if (executor != fetchExecutor) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private JsonHttpClient newClient(boolean compression) {
+    HttpClient httpClient = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .executor(clientExecutor)
+        .build();
+    // Квота hh.ru в бенчмарке не нужна
+    RequestRateLimiter rateLimiter = new RequestRateLimiter(1_000_000, 1_000_000, 1_000_000, Duration.ofMinutes(1));
+    return new JsonHttpClient(httpClient, new ObjectMapper(), rateLimiter, Duration.ofSeconds(30), compression);
+  }
+
+  private void handleVacancy(HttpExchange exchange) throws IOException {
+    String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+    byte[] body = gzip ? gzipBody : plainBody;
+
+    try {
+      Thread.sleep(STUB_LATENCY.toMillis() + body.length / STUB_BYTES_PER_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    if (gzip) {
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+    bytesSent.addAndGet(body.length);
+  }
+
+  /**
+   * Ответ размером с типичную вакансию hh.ru: основной объем - HTML-описание
+   */
+  private static String vacancyJson() {
+    StringBuilder description = new StringBuilder();
+    for (int i = 0; description.length() < 24 * 1024; i++) {
+      description.append("<p><strong>Требования ").append(i)
+          .append(":</strong> опыт разработки на Java от 3 лет, Spring Boot, PostgreSQL, Kafka.</p>");
+    }
+    return """
+        {"id":"123456","name":"Java Developer","area":{"id":"1","name":"Москва"},\
+        "salary":{"from":300000,"to":400000,"currency":"RUR","gross":false},\
+        "key_skills":[{"name":"Java"},{"name":"Spring"},{"name":"PostgreSQL"}],\
+        "description":"%s"}""".formatted(description);
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  private record Result(double requestsPerSecond, long bytes) {
+  }
+}